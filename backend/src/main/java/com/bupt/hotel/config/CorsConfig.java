@@ -19,6 +19,8 @@ public class CorsConfig {
                         .allowedOriginPatterns("*")
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        // 条件请求/长轮询需要读取 ETag
+                        .exposedHeaders("ETag")
                         .allowCredentials(true)
                         .maxAge(3600);
             }
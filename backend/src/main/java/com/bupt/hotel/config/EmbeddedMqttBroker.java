@@ -0,0 +1,54 @@
+package com.bupt.hotel.config;
+
+import io.moquette.broker.Server;
+import io.moquette.broker.config.IConfig;
+import io.moquette.broker.config.MemoryConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * 进程内 MQTT Broker（Moquette），仅在 local-broker profile 下启动，用于隔离环境中的本地联调与压测。
+ * MqttService 依赖本组件，保证 Broker 先于客户端连接启动。
+ */
+@Component
+@Profile("local-broker")
+@Slf4j
+public class EmbeddedMqttBroker {
+
+    @Value("${hotel.mqtt.embedded-broker.host:127.0.0.1}")
+    private String host;
+
+    @Value("${hotel.mqtt.embedded-broker.port:1883}")
+    private int port;
+
+    // 单条消息的最大字节数（汇总帧可能较大）
+    @Value("${hotel.mqtt.embedded-broker.max-message-bytes:1048576}")
+    private int maxMessageBytes;
+
+    private final Server server = new Server();
+
+    @PostConstruct
+    public void start() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(IConfig.HOST_PROPERTY_NAME, host);
+        properties.setProperty(IConfig.PORT_PROPERTY_NAME, String.valueOf(port));
+        properties.setProperty(IConfig.ALLOW_ANONYMOUS_PROPERTY_NAME, "true");
+        properties.setProperty(IConfig.PERSISTENCE_ENABLED_PROPERTY_NAME, "false");
+        properties.setProperty(IConfig.ENABLE_TELEMETRY_NAME, "false");
+        properties.setProperty(IConfig.NETTY_MAX_BYTES_PROPERTY_NAME, String.valueOf(maxMessageBytes));
+        server.startServer(new MemoryConfig(properties));
+        log.info("Embedded MQTT broker listening on {}:{}", host, port);
+    }
+
+    @PreDestroy
+    public void stop() {
+        server.stopServer();
+    }
+}
@@ -4,8 +4,8 @@ import com.bupt.hotel.entity.BillingDetail;
 import com.bupt.hotel.entity.BillingRecord;
 import com.bupt.hotel.entity.LodgingBill;
 import com.bupt.hotel.entity.Room;
-import com.bupt.hotel.repository.RoomRepository;
 import com.bupt.hotel.service.BillingService;
+import com.bupt.hotel.service.RoomStateStore;
 import com.bupt.hotel.service.TimeService;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,7 +27,7 @@ public class ClerkController {
     private BillingService billingService;
 
     @Autowired
-    private RoomRepository roomRepository;
+    private RoomStateStore roomStateStore;
 
     @Autowired
     private TimeService timeService;
@@ -79,21 +79,23 @@ public class ClerkController {
 
     @PostMapping("/checkin")
     public Room checkIn(@RequestBody CheckInRequest req) {
-        Room room = roomRepository.findByRoomId(req.getRoomId()).orElseThrow();
-        room.setCustomerName(req.getCustomerName());
-        // 身份证号可以为空，空字符串转换为null
-        room.setIdCard(req.getIdCard() != null && !req.getIdCard().trim().isEmpty()
-                ? req.getIdCard()
-                : null);
-        room.setCheckInTime(timeService.getCurrentTime());
-        room.setTotalFee(0.0);
-        room.setPowerCycleCount(0); // 重置开关机次数
-        // 重置空调状态
-        room.setIsOn(false);
-        room.setStatus(com.bupt.hotel.entity.RoomStatus.SHUTDOWN);
+        LocalDateTime checkInTime = timeService.getCurrentTime();
+        Room room = roomStateStore.update(req.getRoomId(), r -> {
+            r.setCustomerName(req.getCustomerName());
+            // 身份证号可以为空，空字符串转换为null
+            r.setIdCard(req.getIdCard() != null && !req.getIdCard().trim().isEmpty()
+                    ? req.getIdCard()
+                    : null);
+            r.setCheckInTime(checkInTime);
+            r.setTotalFee(0.0);
+            r.setPowerCycleCount(0); // 重置开关机次数
+            // 重置空调状态
+            r.setIsOn(false);
+            r.setStatus(com.bupt.hotel.entity.RoomStatus.SHUTDOWN);
+        }).orElseThrow();
         // 清除总费用缓存
         schedulerService.clearTotalFeeCache(req.getRoomId());
-        return roomRepository.save(room);
+        return room;
     }
 
     @PostMapping("/checkout/ac")
@@ -131,24 +133,28 @@ public class ClerkController {
 
     @PostMapping("/checkout/confirm")
     public Room confirmCheckout(@RequestParam String roomId) {
-        Room room = roomRepository.findByRoomId(roomId).orElseThrow();
+        roomStateStore.findByRoomId(roomId).orElseThrow();
 
         // 先停止空调服务（如果正在运行），从服务队列和等待队列中移除
         schedulerService.stopSupply(roomId, true);
 
         // 清除入住信息
-        room.setCustomerName(null);
-        room.setIdCard(null);
-        room.setCheckInTime(null);
-        room.setTotalFee(0.0);
-        room.setPowerCycleCount(0); // 重置开关机次数
-        // 重置空调状态
-        room.setIsOn(false);
+        Room room = roomStateStore.update(roomId, r -> {
+            r.setCustomerName(null);
+            r.setIdCard(null);
+            r.setCheckInTime(null);
+            r.setTotalFee(0.0);
+            r.setPowerCycleCount(0); // 重置开关机次数
+            // 重置空调状态
+            r.setIsOn(false);
+            r.setStatus(com.bupt.hotel.entity.RoomStatus.SHUTDOWN);
+        }).orElseThrow();
         // 清除总费用缓存
         schedulerService.clearTotalFeeCache(roomId);
-        room.setStatus(com.bupt.hotel.entity.RoomStatus.SHUTDOWN);
 
-        return roomRepository.save(room);
+        // 退房时立即将内存中的房间状态写回数据库
+        roomStateStore.flush();
+        return room;
     }
 
     private BillingRecordView toBillingRecordView(BillingRecord record) {
@@ -3,18 +3,28 @@ package com.bupt.hotel.controller;
 import com.bupt.hotel.entity.FanSpeed;
 import com.bupt.hotel.entity.Mode;
 import com.bupt.hotel.entity.Room;
-import com.bupt.hotel.repository.RoomRepository;
+import com.bupt.hotel.service.GuestStatusService;
+import com.bupt.hotel.service.RoomStateStore;
 import com.bupt.hotel.service.SchedulerService;
 import lombok.Data;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/guest")
@@ -24,7 +34,14 @@ public class GuestController {
     private SchedulerService schedulerService;
 
     @Autowired
-    private RoomRepository roomRepository;
+    private RoomStateStore roomStateStore;
+
+    @Autowired
+    private GuestStatusService guestStatusService;
+
+    // 批量接口单次请求的最大操作数
+    @Value("${hotel.guest.batch.max-operations:1000}")
+    private int batchMaxOperations;
 
     private static final Logger logger = LoggerFactory.getLogger(GuestController.class);
 
@@ -43,9 +60,32 @@ public class GuestController {
         private FanSpeed fanSpeed;
     }
 
+    /**
+     * 批量操作中的一项：op 为 powerOn / changeState / powerOff，其余字段与对应的单个接口一致
+     */
+    @Data
+    public static class BatchOperation {
+        private String op;
+        private String roomId;
+        private Mode mode;
+        private Double targetTemp;
+        private FanSpeed fanSpeed;
+    }
+
+    @Data
+    public static class BatchResult {
+        private int index;
+        private String op;
+        private String roomId;
+        private boolean success;
+        private Room room; // 该操作执行后的房间状态（副本）
+        private String warning;
+        private String error;
+    }
+
     @PostMapping("/powerOn")
     public java.util.Map<String, Object> powerOn(@RequestBody PowerOnRequest req) {
-        Room room = roomRepository.findByRoomId(req.getRoomId()).orElseThrow();
+        Room room = roomStateStore.findByRoomId(req.getRoomId()).orElseThrow();
 
         // 验证：只有已入住的房间才能开机
         if (room.getCustomerName() == null || room.getCustomerName().trim().isEmpty()) {
@@ -78,7 +118,7 @@ public class GuestController {
             warning = ex.getMessage();
             logger.warn("Ignored invalid target temp during powerOn for room {}: {}", req.getRoomId(), ex.getMessage());
             // 选择一个安全的 targetToUse：优先使用房间已有目标，否则使用模式默认
-            Room existing = roomRepository.findByRoomId(req.getRoomId()).orElse(null);
+            Room existing = roomStateStore.findByRoomId(req.getRoomId()).orElse(null);
             if (existing != null && existing.getTargetTemp() != null) {
                 targetToUse = existing.getTargetTemp();
             } else {
@@ -88,28 +128,26 @@ public class GuestController {
 
         // 如果用户选择的模式与数据库中当前模式不同，立即把 currentTemp 设置为对应模式的初始温度，
         // 以保证用户在前端切换模式并开机时能看到预期的初始化温度（即使房间先前已开机）。
-        Room before = roomRepository.findByRoomId(req.getRoomId()).orElseThrow();
-        Mode oldMode = before.getMode();
-        if (oldMode == null || oldMode != req.getMode()) {
-            double initTemp;
-            if (req.getMode() == Mode.HEAT) {
-                initTemp = before.getInitialTempHeat() != null ? before.getInitialTempHeat() : before.getInitialTemp();
-            } else {
-                initTemp = before.getInitialTempCool() != null ? before.getInitialTempCool() : before.getInitialTemp();
+        roomStateStore.update(req.getRoomId(), before -> {
+            Mode oldMode = before.getMode();
+            if (oldMode == null || oldMode != req.getMode()) {
+                double initTemp;
+                if (req.getMode() == Mode.HEAT) {
+                    initTemp = before.getInitialTempHeat() != null ? before.getInitialTempHeat() : before.getInitialTemp();
+                } else {
+                    initTemp = before.getInitialTempCool() != null ? before.getInitialTempCool() : before.getInitialTemp();
+                }
+                before.setCurrentTemp(initTemp);
             }
-            before.setCurrentTemp(initTemp);
-            roomRepository.save(before);
-        }
+        });
 
         schedulerService.requestSupply(req.getRoomId(), req.getMode(), targetToUse, req.getFanSpeed());
 
         // 调度触发后，将房间标记为开机状态（并保存最新的房间信息）
-        Room updated = roomRepository.findByRoomId(req.getRoomId()).orElseThrow();
-        updated.setIsOn(true);
-        roomRepository.save(updated);
+        Room updated = roomStateStore.update(req.getRoomId(), r -> r.setIsOn(true)).orElseThrow();
 
         java.util.Map<String, Object> resp = new java.util.HashMap<>();
-        resp.put("room", roomRepository.findByRoomId(req.getRoomId()).orElseThrow());
+        resp.put("room", updated);
         if (tempInvalid) {
             resp.put("warning", warning);
         }
@@ -118,16 +156,14 @@ public class GuestController {
 
     @PostMapping("/powerOff")
     public Room powerOff(@RequestParam String roomId) {
-        Room room = roomRepository.findByRoomId(roomId).orElseThrow();
-
-        // 如果之前是开机状态，增加开关机次数（每次开关机算一天）
-        if (room.getIsOn() != null && room.getIsOn()) {
-            int count = (room.getPowerCycleCount() != null) ? room.getPowerCycleCount() : 0;
-            room.setPowerCycleCount(count + 1);
-        }
-
-        room.setIsOn(false);
-        roomRepository.save(room);
+        Room room = roomStateStore.update(roomId, r -> {
+            // 如果之前是开机状态，增加开关机次数（每次开关机算一天）
+            if (r.getIsOn() != null && r.getIsOn()) {
+                int count = (r.getPowerCycleCount() != null) ? r.getPowerCycleCount() : 0;
+                r.setPowerCycleCount(count + 1);
+            }
+            r.setIsOn(false);
+        }).orElseThrow();
 
         schedulerService.stopSupply(roomId, true);
         return room;
@@ -135,7 +171,7 @@ public class GuestController {
 
     @PostMapping("/changeState")
     public java.util.Map<String, Object> changeState(@RequestBody ControlRequest req) {
-        Room room = roomRepository.findByRoomId(req.getRoomId()).orElseThrow();
+        Room room = roomStateStore.findByRoomId(req.getRoomId()).orElseThrow();
 
         // 验证：只有已入住的房间才能调整状态
         if (room.getCustomerName() == null || room.getCustomerName().trim().isEmpty()) {
@@ -184,16 +220,118 @@ public class GuestController {
         schedulerService.requestSupply(req.getRoomId(), room.getMode(), targetToUse, req.getFanSpeed());
 
         java.util.Map<String, Object> resp = new java.util.HashMap<>();
-        resp.put("room", roomRepository.findByRoomId(req.getRoomId()).orElseThrow());
+        resp.put("room", roomStateStore.findByRoomId(req.getRoomId()).orElseThrow());
         if (tempInvalid) {
             resp.put("warning", warning);
         }
         return resp;
     }
 
+    /**
+     * 批量执行开机/调整/关机：按提交顺序在调度线程上执行（每个调度分片一个命令），全部执行完后统一做一次抢占检查。
+     * 每项的处理与对应的单个接口相同，某项失败不影响其余各项，结果按提交顺序逐项返回。
+     */
+    @PostMapping("/batch")
+    public List<BatchResult> batch(@RequestBody List<BatchOperation> operations) {
+        if (operations.size() > batchMaxOperations) {
+            throw new IllegalArgumentException("Too many operations in one batch (max " + batchMaxOperations + ")");
+        }
+        List<BatchResult> results = new ArrayList<>(operations.size());
+        List<String> roomIds = new ArrayList<>();
+        List<Runnable> actions = new ArrayList<>();
+        List<BatchResult> submitted = new ArrayList<>();
+        for (int i = 0; i < operations.size(); i++) {
+            BatchOperation operation = operations.get(i);
+            BatchResult result = new BatchResult();
+            result.setIndex(i);
+            result.setOp(operation.getOp());
+            result.setRoomId(operation.getRoomId());
+            results.add(result);
+            Runnable action = toAction(operation, result);
+            if (action == null) {
+                continue;
+            }
+            roomIds.add(operation.getRoomId());
+            actions.add(action);
+            submitted.add(result);
+        }
+        Throwable[] failures = schedulerService.runBatch(roomIds, actions);
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] != null) {
+                submitted.get(i).setError(failures[i].getMessage() != null
+                        ? failures[i].getMessage() : failures[i].getClass().getSimpleName());
+            }
+        }
+        return results;
+    }
+
+    // 复用单个接口的处理逻辑；在调度线程上执行，操作完成后立即记录房间副本。
+    // 无法执行的操作（缺少字段、未知操作、房间不存在）直接记录错误并返回 null
+    private Runnable toAction(BatchOperation operation, BatchResult result) {
+        String roomId = operation.getRoomId();
+        if (roomId == null || operation.getOp() == null) {
+            result.setError("Unknown operation or missing roomId");
+            return null;
+        }
+        if (roomStateStore.findByRoomId(roomId).isEmpty()) {
+            result.setError("房间不存在");
+            return null;
+        }
+        switch (operation.getOp()) {
+            case "powerOn":
+                return () -> {
+                    PowerOnRequest req = new PowerOnRequest();
+                    req.setRoomId(roomId);
+                    req.setMode(operation.getMode());
+                    req.setTargetTemp(operation.getTargetTemp());
+                    req.setFanSpeed(operation.getFanSpeed());
+                    complete(result, powerOn(req));
+                };
+            case "changeState":
+                return () -> {
+                    ControlRequest req = new ControlRequest();
+                    req.setRoomId(roomId);
+                    req.setTargetTemp(operation.getTargetTemp());
+                    req.setFanSpeed(operation.getFanSpeed());
+                    complete(result, changeState(req));
+                };
+            case "powerOff":
+                return () -> {
+                    powerOff(roomId);
+                    complete(result, Map.of());
+                };
+            default:
+                result.setError("Unknown operation or missing roomId");
+                return null;
+        }
+    }
+
+    private void complete(BatchResult result, Map<String, Object> response) {
+        result.setSuccess(true);
+        result.setWarning((String) response.get("warning"));
+        result.setRoom(roomStateStore.findByRoomId(result.getRoomId()).orElse(null));
+    }
+
+    /**
+     * 房间状态（内存状态，温度与费用按调度轨迹插值到当前时刻）。响应带 ETag，If-None-Match 一致时返回 304
+     */
     @GetMapping("/status")
-    public Room getStatus(@RequestParam String roomId) {
-        return roomRepository.findByRoomId(roomId).orElseThrow();
+    public ResponseEntity<Room> getStatus(@RequestParam String roomId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        GuestStatusService.Status status = guestStatusService.status(roomId);
+        if (status.getEtag().equals(ifNoneMatch)) {
+            return GuestStatusService.notModified(status.getEtag());
+        }
+        return GuestStatusService.ok(status);
+    }
+
+    /**
+     * 长轮询：ETag 与 If-None-Match 一致时挂起，直到房间状态变化（返回 200）或 waitMs 超时（返回 304）
+     */
+    @GetMapping(value = "/status", params = "waitMs")
+    public DeferredResult<ResponseEntity<Room>> awaitStatus(@RequestParam String roomId, @RequestParam long waitMs,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return guestStatusService.await(roomId, ifNoneMatch, waitMs);
     }
 
     /**
@@ -1,29 +1,33 @@
 package com.bupt.hotel.controller;
 
 import com.bupt.hotel.entity.Room;
-import com.bupt.hotel.repository.RoomRepository;
+import com.bupt.hotel.service.DashboardStreamService;
+import com.bupt.hotel.service.MqttService;
 import com.bupt.hotel.service.ReportService;
+import com.bupt.hotel.service.RoomSummaryService;
 import com.bupt.hotel.service.SchedulerService;
+import com.bupt.hotel.service.SchedulerSnapshot;
 import com.bupt.hotel.service.TimeService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/manager")
 public class ManagerController {
 
-    @Autowired
-    private RoomRepository roomRepository;
-
     @Autowired
     private SchedulerService schedulerService;
 
@@ -33,59 +37,97 @@ public class ManagerController {
     @Autowired
     private TimeService timeService;
 
-    @lombok.Data
-    public static class ServiceUnitView {
-        private String roomId;
-        private LocalDateTime startTime;
-        private com.bupt.hotel.entity.FanSpeed fanSpeed;
-        private long servedDurationSeconds;
-        private double currentFee;
-    }
+    @Autowired
+    private MqttService mqttService;
 
-    @lombok.Data
-    public static class WaitingInfoView {
-        private String roomId;
-        private com.bupt.hotel.entity.FanSpeed fanSpeed;
-        private long waitTimeRemaining;
-        private long totalWaitTime;
-    }
+    @Autowired
+    private DashboardStreamService dashboardStreamService;
+
+    @Autowired
+    private RoomSummaryService roomSummaryService;
 
     @GetMapping("/rooms")
     public List<Room> getAllRooms() {
-        List<Room> rooms = roomRepository.findAll();
-        // 填充当前会话费用（非持久化字段）
-        // 使用内存缓存确保 totalFee 和 currentSessionFee 实时同步
-        for (Room room : rooms) {
-            double currentSessionFee = schedulerService.getCurrentSessionFee(room.getRoomId());
-            room.setCurrentSessionFee(currentSessionFee);
-            
-            // 优先使用内存缓存中的总费用（实时更新），如果没有则使用数据库中的值
-            Double cachedTotalFee = schedulerService.getCachedTotalFee(room.getRoomId());
-            if (cachedTotalFee != null) {
-                room.setTotalFee(cachedTotalFee);
-            }
-            // 如果缓存中没有，使用数据库中的值（并更新缓存）
-            else if (room.getTotalFee() != null) {
-                schedulerService.updateTotalFeeCache(room.getRoomId(), room.getTotalFee());
-            }
-        }
-        return rooms;
+        return dashboardStreamService.currentRooms();
+    }
+
+    /**
+     * 房间摘要列表（内存读模型），可按楼层过滤并分页
+     *
+     * @param floor 楼层号，如 1；不传返回全部楼层
+     */
+    @GetMapping("/rooms/summary")
+    public RoomSummaryService.RoomSummaryPage getRoomSummaries(
+            @RequestParam(required = false) String floor,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        return roomSummaryService.page(floor, page, size);
     }
 
+    /**
+     * 服务队列。完整读取每次按当前时刻生成，不带 ETag。
+     * 带 sinceVersion 时只返回该版本之后变化的房间（该版本之后离开队列的房间值为 null），响应带 ETag（调度状态版本号），
+     * 版本未变化时返回 304；服务时长与费用不计入版本，增量读取方需自行按时间推算
+     */
     @GetMapping("/queue/service")
-    public Map<String, ServiceUnitView> getServiceQueue() {
-        return schedulerService.getServiceQueue()
-                .entrySet()
-                .stream()
-                .collect(Collectors.toMap(Map.Entry::getKey, e -> toRealServiceUnit(e.getValue())));
+    public ResponseEntity<Map<String, DashboardStreamService.ServiceUnitView>> getServiceQueue(
+            @RequestParam(required = false) Long sinceVersion,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        SchedulerSnapshot snapshot = schedulerService.getSnapshot();
+        ResponseEntity<Map<String, DashboardStreamService.ServiceUnitView>> notModified =
+                VersionedResponses.notModified(snapshot.getVersion(), sinceVersion, ifNoneMatch);
+        if (notModified != null) {
+            return notModified;
+        }
+        return VersionedResponses.ok(snapshot.getVersion(), sinceVersion)
+                .body(sinceVersion == null ? dashboardStreamService.currentServiceQueue()
+                        : dashboardStreamService.serviceQueueSince(snapshot, sinceVersion));
     }
 
+    /**
+     * 等待队列，sinceVersion 与 ETag 的用法同服务队列（剩余等待时间不计入版本）
+     */
     @GetMapping("/queue/waiting")
-    public Map<String, WaitingInfoView> getWaitingQueue() {
-        return schedulerService.getWaitingQueue()
-                .entrySet()
-                .stream()
-                .collect(Collectors.toMap(Map.Entry::getKey, e -> toRealWaitingInfo(e.getValue())));
+    public ResponseEntity<Map<String, DashboardStreamService.WaitingInfoView>> getWaitingQueue(
+            @RequestParam(required = false) Long sinceVersion,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        SchedulerSnapshot snapshot = schedulerService.getSnapshot();
+        ResponseEntity<Map<String, DashboardStreamService.WaitingInfoView>> notModified =
+                VersionedResponses.notModified(snapshot.getVersion(), sinceVersion, ifNoneMatch);
+        if (notModified != null) {
+            return notModified;
+        }
+        return VersionedResponses.ok(snapshot.getVersion(), sinceVersion)
+                .body(sinceVersion == null ? dashboardStreamService.currentWaitingQueue()
+                        : dashboardStreamService.waitingQueueSince(snapshot, sinceVersion));
+    }
+
+    /**
+     * 看板推送流：先推送一条完整快照 (snapshot)，之后只推送带版本号的增量 (delta)，替代轮询上面三个接口
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream() {
+        return dashboardStreamService.subscribe();
+    }
+
+    @GetMapping("/stream/stats")
+    public DashboardStreamService.StreamStats getStreamStats() {
+        return dashboardStreamService.getStreamStats();
+    }
+
+    @GetMapping("/units")
+    public List<SchedulerService.UnitUsage> getUnitUsage() {
+        return schedulerService.getUnitUsage();
+    }
+
+    @GetMapping("/mqtt")
+    public MqttService.PublishStats getMqttStats() {
+        return mqttService.getPublishStats();
+    }
+
+    @GetMapping("/mqtt/commands")
+    public MqttService.CommandStats getMqttCommandStats() {
+        return mqttService.getCommandStats();
     }
 
     @GetMapping("/report")
@@ -96,23 +138,4 @@ public class ManagerController {
         LocalDateTime logicEnd = timeService.toLogicTime(end);
         return reportService.generateGlobalReport(logicStart, logicEnd);
     }
-
-    private ServiceUnitView toRealServiceUnit(SchedulerService.ServiceUnit unit) {
-        ServiceUnitView view = new ServiceUnitView();
-        view.setRoomId(unit.getRoomId());
-        view.setFanSpeed(unit.getFanSpeed());
-        view.setCurrentFee(unit.getCurrentFee());
-        view.setStartTime(timeService.toRealTime(unit.getStartTime()));
-        view.setServedDurationSeconds(timeService.logicSecondsToRealSeconds(unit.getServedDurationSeconds()));
-        return view;
-    }
-
-    private WaitingInfoView toRealWaitingInfo(SchedulerService.WaitingInfo info) {
-        WaitingInfoView view = new WaitingInfoView();
-        view.setRoomId(info.getRoomId());
-        view.setFanSpeed(info.getFanSpeed());
-        view.setWaitTimeRemaining(timeService.logicSecondsToRealSeconds(info.getWaitTimeRemaining()));
-        view.setTotalWaitTime(timeService.logicSecondsToRealSeconds(info.getTotalWaitTime()));
-        return view;
-    }
 }
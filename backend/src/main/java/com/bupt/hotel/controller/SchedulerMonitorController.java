@@ -1,18 +1,24 @@
 package com.bupt.hotel.controller;
 
 import com.bupt.hotel.service.SchedulerService;
+import com.bupt.hotel.service.SchedulerSnapshot;
+import com.bupt.hotel.service.TimeService;
 import com.bupt.hotel.service.SchedulerService.ServiceUnit;
 import com.bupt.hotel.service.SchedulerService.WaitingInfo;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/monitor")
@@ -21,6 +27,9 @@ public class SchedulerMonitorController {
     @Autowired
     private SchedulerService schedulerService;
 
+    @Autowired
+    private TimeService timeService;
+
     @Data
     public static class ServiceSnapshot {
         private String roomId;
@@ -39,38 +48,73 @@ public class SchedulerMonitorController {
     }
 
     @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class SnapshotResponse {
         private LocalDateTime timestamp;
+        private long version; // 调度状态版本号
         private List<ServiceSnapshot> serviceQueue;
         private List<WaitingSnapshot> waitingQueue;
+        // 仅带 sinceVersion 时返回：该版本之后离开服务队列/等待队列的房间（客户端据此删除）
+        private List<String> removedService;
+        private List<String> removedWaiting;
     }
 
+    /**
+     * 调度队列快照，服务时长、费用与剩余等待时间按响应时刻推导。完整读取每次重新生成，不带 ETag。
+     * 带 sinceVersion 时只返回该版本之后变化的房间，响应带 ETag（版本号），If-None-Match 与当前版本一致
+     * 或 sinceVersion 不小于当前版本时返回 304；这些随时间变化的字段不计入版本，增量读取方需自行按时间推算
+     */
     @GetMapping("/snapshot")
-    public SnapshotResponse snapshot() {
+    public ResponseEntity<SnapshotResponse> snapshot(
+            @RequestParam(required = false) Long sinceVersion,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        SchedulerSnapshot state = schedulerService.getSnapshot();
+        ResponseEntity<SnapshotResponse> notModified =
+                VersionedResponses.notModified(state.getVersion(), sinceVersion, ifNoneMatch);
+        if (notModified != null) {
+            return notModified;
+        }
+        double now = timeService.getLogicSeconds();
         SnapshotResponse resp = new SnapshotResponse();
         resp.setTimestamp(LocalDateTime.now());
+        resp.setVersion(state.getVersion());
+        resp.setServiceQueue(new ArrayList<>());
+        resp.setWaitingQueue(new ArrayList<>());
+        if (sinceVersion != null) {
+            resp.setRemovedService(new ArrayList<>());
+            resp.setRemovedWaiting(new ArrayList<>());
+        }
+        for (SchedulerSnapshot.Entry entry : state.changedSince(sinceVersion == null ? -1 : sinceVersion)) {
+            if (entry.isServing()) {
+                resp.getServiceQueue().add(toSnapshot(entry.serviceAt(now)));
+            } else if (sinceVersion != null && entry.leftServiceSince(sinceVersion)) {
+                resp.getRemovedService().add(entry.getRoomId());
+            }
+            if (entry.isWaiting()) {
+                resp.getWaitingQueue().add(toSnapshot(entry.waitingAt(now)));
+            } else if (sinceVersion != null && entry.leftWaitingSince(sinceVersion)) {
+                resp.getRemovedWaiting().add(entry.getRoomId());
+            }
+        }
+        return VersionedResponses.ok(state.getVersion(), sinceVersion).body(resp);
+    }
 
-        Map<String, ServiceUnit> services = schedulerService.getServiceQueue();
-        resp.setServiceQueue(services.values().stream().map(u -> {
-            ServiceSnapshot s = new ServiceSnapshot();
-            s.setRoomId(u.getRoomId());
-            s.setFanSpeed(u.getFanSpeed() == null ? null : u.getFanSpeed().name());
-            s.setServedDurationSeconds(u.getServedDurationSeconds());
-            s.setCurrentFee(u.getCurrentFee());
-            return s;
-        }).collect(Collectors.toList()));
-
-        Map<String, WaitingInfo> waits = schedulerService.getWaitingQueue();
-        resp.setWaitingQueue(waits.values().stream().map(w -> {
-            WaitingSnapshot ws = new WaitingSnapshot();
-            ws.setRoomId(w.getRoomId());
-            ws.setFanSpeed(w.getFanSpeed() == null ? null : w.getFanSpeed().name());
-            ws.setWaitTimeRemaining(w.getWaitTimeRemaining());
-            ws.setTotalWaitedTime(w.getTotalWaitedTime());
-            ws.setPriorityBoosted(w.isPriorityBoosted());
-            return ws;
-        }).collect(Collectors.toList()));
+    private static ServiceSnapshot toSnapshot(ServiceUnit u) {
+        ServiceSnapshot s = new ServiceSnapshot();
+        s.setRoomId(u.getRoomId());
+        s.setFanSpeed(u.getFanSpeed() == null ? null : u.getFanSpeed().name());
+        s.setServedDurationSeconds(u.getServedDurationSeconds());
+        s.setCurrentFee(u.getCurrentFee());
+        return s;
+    }
 
-        return resp;
+    private static WaitingSnapshot toSnapshot(WaitingInfo w) {
+        WaitingSnapshot ws = new WaitingSnapshot();
+        ws.setRoomId(w.getRoomId());
+        ws.setFanSpeed(w.getFanSpeed() == null ? null : w.getFanSpeed().name());
+        ws.setWaitTimeRemaining(w.getWaitTimeRemaining());
+        ws.setTotalWaitedTime(w.getTotalWaitedTime());
+        ws.setPriorityBoosted(w.isPriorityBoosted());
+        return ws;
     }
 }
@@ -0,0 +1,46 @@
+package com.bupt.hotel.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * 带版本号的读接口的条件请求处理。
+ * 版本号只反映队列成员与排序字段的变化，服务时长、费用、剩余等待时间按响应时刻推导、不计入版本，
+ * 因此只有带 sinceVersion 的增量读取使用版本号作为 ETag 并返回 304：增量读取方需以收到响应的时刻为基准，
+ * 自行推算这些随时间变化的字段。完整读取每次都重新生成，不带 ETag，并声明 Cache-Control: no-cache。
+ */
+final class VersionedResponses {
+
+    private VersionedResponses() {
+    }
+
+    static String etagOf(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * 增量读取时，If-None-Match 与当前版本一致或 sinceVersion 已不小于当前版本，返回 304 响应；
+     * 完整读取（sinceVersion 为空）或版本已变化时返回 null
+     */
+    static <T> ResponseEntity<T> notModified(long version, Long sinceVersion, String ifNoneMatch) {
+        if (sinceVersion == null) {
+            return null;
+        }
+        String etag = etagOf(version);
+        if (etag.equals(ifNoneMatch) || sinceVersion >= version) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return null;
+    }
+
+    /**
+     * 200 响应：增量读取带版本号 ETag，完整读取不带 ETag 且不允许缓存
+     */
+    static ResponseEntity.BodyBuilder ok(long version, Long sinceVersion) {
+        if (sinceVersion == null) {
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache());
+        }
+        return ResponseEntity.ok().eTag(etagOf(version));
+    }
+}
@@ -8,8 +8,10 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "billing_detail")
 public class BillingDetail {
+    // 详单由 BillingDetailWriter 批量插入，主键按段取自 billing_detail_seq
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "billing_detail_seq")
+    @SequenceGenerator(name = "billing_detail_seq", sequenceName = "billing_detail_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "room_id")
@@ -66,4 +66,30 @@ public class Room {
 
     @Transient
     private Double currentSessionFee; // 当前送风会话费用（非持久化）
+
+    /**
+     * 字段逐一复制的副本（RoomStateStore 发布新状态与返回读取结果时使用）
+     */
+    public Room copy() {
+        Room copy = new Room();
+        copy.id = id;
+        copy.roomId = roomId;
+        copy.currentTemp = currentTemp;
+        copy.targetTemp = targetTemp;
+        copy.fanSpeed = fanSpeed;
+        copy.mode = mode;
+        copy.isOn = isOn;
+        copy.initialTemp = initialTemp;
+        copy.initialTempCool = initialTempCool;
+        copy.initialTempHeat = initialTempHeat;
+        copy.pricePerDay = pricePerDay;
+        copy.status = status;
+        copy.checkInTime = checkInTime;
+        copy.totalFee = totalFee;
+        copy.customerName = customerName;
+        copy.idCard = idCard;
+        copy.powerCycleCount = powerCycleCount;
+        copy.currentSessionFee = currentSessionFee;
+        return copy;
+    }
 }
@@ -0,0 +1,245 @@
+package com.bupt.hotel.service;
+
+import com.bupt.hotel.entity.BillingDetail;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 详单写回：调度线程结算会话时只把详单放入定长环形缓冲区，由 billing-detail-writer 线程按固定间隔
+ * 以 JDBC 批量插入写入数据库（write-behind），调度线程不再等待数据库。
+ * 主键取自步长为 {@link #ID_BLOCK} 的序列 billing_detail_seq，每取一次序列值分配一整段 ID（pooled-lo），
+ * 插入不依赖自增列，可以成批执行。
+ *
+ * 读取详单之前（出账、查询详单、导出、报表）调用 {@link #flush()}：返回时此前提交的详单都已写入数据库。
+ * 提交（{@link #append}）从不阻塞、不抛异常：缓冲区已满时详单放入无界的溢出队列并唤醒写回线程，详单不会丢弃；
+ * 数据库不可用时详单留在内存中等待重试，只有调用 flush 的读取方会收到数据库异常。
+ * 每批插入在独立的新事务中提交（REQUIRES_NEW），不加入调用方的事务：调用方（如出账）回滚时，
+ * 已从缓冲区取出并写入的详单（可能属于其他房间）不会随之撤销。
+ */
+@Service
+@Slf4j
+public class BillingDetailWriter {
+
+    // 与 schema.sql 中 billing_detail_seq 的步长、BillingDetail 的 allocationSize 一致
+    static final int ID_BLOCK = 50;
+
+    private static final String INSERT_SQL = "INSERT INTO billing_detail (id, room_id, request_time, start_time, "
+            + "end_time, duration, fan_speed, fee, cumulative_fee, billing_record_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String NEXT_ID_SQL = "SELECT NEXT VALUE FOR billing_detail_seq";
+
+    // MySQL 没有序列，billing_detail_seq 为单行表（与 Hibernate 的序列模拟表结构相同）：
+    // 原子地把 next_val 加一段，并通过 LAST_INSERT_ID 取回加之前的值作为段首
+    private static final String MYSQL_RESERVE_BLOCK_SQL =
+            "UPDATE billing_detail_seq SET next_val = LAST_INSERT_ID(next_val + " + ID_BLOCK + ")";
+    private static final String MYSQL_BLOCK_START_SQL = "SELECT LAST_INSERT_ID() - " + ID_BLOCK;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // 写回间隔 (ms)
+    @Value("${hotel.billing-detail.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    // 每批插入的最大行数
+    @Value("${hotel.billing-detail.flush-batch-size:100}")
+    private int flushBatchSize;
+
+    // 环形缓冲区容量
+    @Value("${hotel.billing-detail.buffer-capacity:4096}")
+    private int bufferCapacity;
+
+    private BlockingQueue<BillingDetail> buffer;
+    // 缓冲区已满时的溢出队列；非空期间新的详单也放在这里，保持同一提交方的提交顺序
+    private final ConcurrentLinkedQueue<BillingDetail> overflow = new ConcurrentLinkedQueue<>();
+    // 已向写回线程提交、尚未开始执行的写回请求，避免缓冲区满期间重复提交
+    private final AtomicBoolean writeRequested = new AtomicBoolean();
+
+    // 串行化写回与 ID 分配；写回期间调用 flush 的线程等待其完成
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // 已取出但尚未写入的详单（写回失败时保留），下次写回时先重试这些再取新的详单；
+    // 失败时不再继续取出，数量不超过一次取出的详单数（仅在持有 flushLock 时访问）
+    private final List<BillingDetail> retained = new ArrayList<>();
+    // 当前 ID 段中下一个可用 ID 与段尾（不含）
+    private long nextId;
+    private long idLimit;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    private ScheduledExecutorService writer;
+
+    private TransactionTemplate batchTransaction;
+
+    // 数据库不支持序列（MySQL）时使用序列模拟表
+    private boolean sequenceTable;
+
+    @PostConstruct
+    public void init() {
+        buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        batchTransaction = new TransactionTemplate(transactionManager);
+        batchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        sequenceTable = Boolean.TRUE.equals(jdbcTemplate.execute((Connection connection) ->
+                "MySQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName())));
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "billing-detail-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.scheduleWithFixedDelay(this::writeBehind, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 提交一条详单（提交后不再修改），在调度线程上调用，不阻塞、不抛异常。
+     * 缓冲区已满时放入溢出队列并唤醒写回线程
+     */
+    public void append(BillingDetail detail) {
+        appended.incrementAndGet();
+        if (overflow.isEmpty() && buffer.offer(detail)) {
+            return;
+        }
+        overflow.add(detail);
+        if (writeRequested.compareAndSet(false, true)) {
+            try {
+                writer.execute(() -> {
+                    writeRequested.set(false);
+                    writeBehind();
+                });
+            } catch (RejectedExecutionException e) {
+                // 正在关闭：详单留在溢出队列中，由关闭时的 flush 写入
+                writeRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * 同步写回缓冲区中的全部详单：返回时此前提交的详单都已写入数据库
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            // 先重试上次未写入的详单，失败时不再取出新的详单
+            writeRetained();
+            buffer.drainTo(retained);
+            BillingDetail detail;
+            while ((detail = overflow.poll()) != null) {
+                retained.add(detail);
+            }
+            writeRetained();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // 写回线程：定时执行，或缓冲区满时被唤醒；失败时详单留待下次重试
+    private void writeBehind() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Billing detail write-behind failed, {} details pending", pendingCount(), e);
+        }
+    }
+
+    // 按批插入 retained 中的详单，每批独立提交；抛出异常时回滚的这一批及其后的详单留在 retained 中
+    private void writeRetained() {
+        int done = 0;
+        try {
+            while (done < retained.size()) {
+                int end = Math.min(done + flushBatchSize, retained.size());
+                List<BillingDetail> chunk = retained.subList(done, end);
+                batchTransaction.executeWithoutResult(status -> insert(chunk));
+                written.addAndGet(chunk.size());
+                done = end;
+            }
+        } finally {
+            retained.subList(0, done).clear();
+        }
+    }
+
+    private long pendingCount() {
+        return appended.get() - written.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+        flush();
+        log.info("Billing details flushed on shutdown ({} appended, {} written)", appended.get(), written.get());
+    }
+
+    private void insert(List<BillingDetail> details) {
+        List<Object[]> rows = new ArrayList<>(details.size());
+        for (BillingDetail detail : details) {
+            if (detail.getId() == null) {
+                detail.setId(allocateId());
+            }
+            rows.add(toParams(detail));
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+
+    // 当前段用完时从序列取下一段：序列值为段首，段内 ID 在内存中递增。
+    // 取段在独立事务中提交，所在批次回滚时已分配的段不会被再次分配
+    private long allocateId() {
+        if (nextId >= idLimit) {
+            Long first = batchTransaction.execute(status -> {
+                if (sequenceTable) {
+                    jdbcTemplate.update(MYSQL_RESERVE_BLOCK_SQL);
+                    return jdbcTemplate.queryForObject(MYSQL_BLOCK_START_SQL, Long.class);
+                }
+                return jdbcTemplate.queryForObject(NEXT_ID_SQL, Long.class);
+            });
+            nextId = first;
+            idLimit = first + ID_BLOCK;
+        }
+        return nextId++;
+    }
+
+    private static Object[] toParams(BillingDetail detail) {
+        return new Object[] {
+                detail.getId(),
+                detail.getRoomId(),
+                toTimestamp(detail.getRequestTime()),
+                toTimestamp(detail.getStartTime()),
+                toTimestamp(detail.getEndTime()),
+                detail.getDuration(),
+                detail.getFanSpeed() == null ? null : detail.getFanSpeed().name(),
+                detail.getFee(),
+                detail.getCumulativeFee(),
+                detail.getBillingRecordId()
+        };
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time == null ? null : Timestamp.valueOf(time);
+    }
+}
@@ -15,19 +15,24 @@ import java.util.List;
 public class BillingService {
 
     @Autowired
-    private RoomRepository roomRepository;
+    private RoomStateStore roomStateStore;
     @Autowired
     private BillingRecordRepository billingRecordRepository;
     @Autowired
     private BillingDetailRepository billingDetailRepository;
     @Autowired
+    private BillingDetailWriter billingDetailWriter;
+    @Autowired
     private LodgingBillRepository lodgingBillRepository;
     @Autowired
     private TimeService timeService;
 
     @Transactional
     public BillingRecord generateAcBill(String roomId) {
-        Room room = roomRepository.findByRoomId(roomId).orElseThrow();
+        // 先写回缓冲中的详单，保证本次入住的详单全部关联到账单。
+        // 写回在独立事务中提交，本方法回滚不会撤销已写入的详单
+        billingDetailWriter.flush();
+        Room room = roomStateStore.findByRoomId(roomId).orElseThrow();
 
         BillingRecord record = new BillingRecord();
         record.setRoomId(roomId);
@@ -53,7 +58,7 @@ public class BillingService {
      */
     @Transactional
     public LodgingBill generateLodgingBill(String roomId) {
-        Room room = roomRepository.findByRoomId(roomId).orElseThrow();
+        Room room = roomStateStore.findByRoomId(roomId).orElseThrow();
         LocalDateTime now = timeService.getCurrentTime();
 
         LodgingBill bill = new LodgingBill();
@@ -74,6 +79,7 @@ public class BillingService {
     }
 
     public List<BillingDetail> getDetails(String roomId) {
+        billingDetailWriter.flush();
         return billingDetailRepository.findByRoomId(roomId);
     }
 
@@ -94,6 +100,7 @@ public class BillingService {
         // 过滤出该房间最新的住宿账单
         LodgingBill lodgingBill = lodgingBills.isEmpty() ? null : lodgingBills.get(lodgingBills.size() - 1);
 
+        billingDetailWriter.flush();
         List<BillingDetail> details = billingDetailRepository.findByRoomId(roomId);
 
         // 2. 拼接 CSV 格式
@@ -0,0 +1,388 @@
+package com.bupt.hotel.service;
+
+import com.bupt.hotel.entity.FanSpeed;
+import com.bupt.hotel.entity.Room;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 管理员/前台看板的服务端推送（Server-Sent Events）。
+ * 由单个 dashboard-stream 线程按固定间隔组装一次房间摘要与服务/等待队列，与上一次组装结果比较，
+ * 只把变化的房间和队列成员作为带版本号的增量事件推送给所有连接；新连接先收到一条完整快照。
+ * 每个事件只序列化一次，所有连接共享同一份数据，连接数增加时组装与序列化的开销不变。
+ * 没有连接时不组装。
+ */
+@Service
+@Slf4j
+public class DashboardStreamService {
+
+    private static final String EVENT_SNAPSHOT = "snapshot";
+    private static final String EVENT_DELTA = "delta";
+
+    @Autowired
+    private RoomStateStore roomStateStore;
+
+    @Autowired
+    private SchedulerService schedulerService;
+
+    @Autowired
+    private TimeService timeService;
+
+    @Autowired
+    private RoomSummaryService roomSummaryService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 组装与推送间隔 (ms)
+    @Value("${hotel.dashboard.stream-interval-ms:500}")
+    private long streamIntervalMs;
+
+    // 无变化时发送保活注释的间隔 (ms)，用于及时发现已断开的连接
+    @Value("${hotel.dashboard.keepalive-ms:15000}")
+    private long keepaliveMs;
+
+    // 单个连接的超时 (ms)，0 表示不超时（浏览器 EventSource 会自动重连并重新收到快照）
+    @Value("${hotel.dashboard.stream-timeout-ms:0}")
+    private long streamTimeoutMs;
+
+    @Data
+    public static class ServiceUnitView {
+        private String roomId;
+        private LocalDateTime startTime;
+        private FanSpeed fanSpeed;
+        private long servedDurationSeconds;
+        private double currentFee;
+        private String acUnit;
+    }
+
+    @Data
+    public static class WaitingInfoView {
+        private String roomId;
+        private FanSpeed fanSpeed;
+        private long waitTimeRemaining;
+        private long totalWaitTime;
+    }
+
+    /**
+     * 推送事件：snapshot 为完整状态；delta 只包含相对上一版本变化的房间与新增/变化的队列成员，
+     * 以及离开队列的房间号
+     */
+    @Data
+    public static class DashboardEvent {
+        private long version;
+        private List<RoomSummaryService.RoomSummary> rooms;
+        private Map<String, ServiceUnitView> serviceQueue;
+        private Map<String, WaitingInfoView> waitingQueue;
+        private List<String> removedService;
+        private List<String> removedWaiting;
+    }
+
+    @Data
+    public static class StreamStats {
+        private int subscribers;
+        private long events;
+        private long writes;
+    }
+
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+    // 等待发送快照的新连接
+    private final ConcurrentLinkedQueue<SseEmitter> joining = new ConcurrentLinkedQueue<>();
+    // 组装并序列化的事件数与写出到连接的次数
+    private final AtomicLong eventsBuilt = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    // 最近一次组装的状态，仅由推送线程访问；没有连接时清空
+    private long version;
+    private Map<String, RoomSummaryService.RoomSummary> lastRooms;
+    private Map<String, ServiceUnitView> lastService;
+    private Map<String, WaitingInfoView> lastWaiting;
+    private long lastSentAtNanos;
+
+    private ScheduledExecutorService streamer;
+
+    @PostConstruct
+    public void init() {
+        streamer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dashboard-stream");
+            t.setDaemon(true);
+            return t;
+        });
+        streamer.scheduleWithFixedDelay(this::tick, streamIntervalMs, streamIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (streamer != null) {
+            streamer.shutdownNow();
+        }
+        for (SseEmitter emitter : subscribers) {
+            emitter.complete();
+        }
+        subscribers.clear();
+    }
+
+    /**
+     * 建立推送连接，快照由推送线程立即发送
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        emitter.onCompletion(() -> remove(emitter));
+        emitter.onTimeout(() -> remove(emitter));
+        emitter.onError(e -> remove(emitter));
+        joining.add(emitter);
+        streamer.execute(this::tick);
+        return emitter;
+    }
+
+    public StreamStats getStreamStats() {
+        StreamStats stats = new StreamStats();
+        stats.setSubscribers(subscribers.size() + joining.size());
+        stats.setEvents(eventsBuilt.get());
+        stats.setWrites(writes.get());
+        return stats;
+    }
+
+    /**
+     * 所有房间的当前状态（副本）：温度按调度轨迹插值到当前时刻，费用使用实时值
+     */
+    public List<Room> currentRooms() {
+        // 使用副本，避免填充展示字段时修改内存中的权威状态
+        List<Room> rooms = roomStateStore.findAll();
+        for (Room room : rooms) {
+            schedulerService.applyCurrentState(room);
+            room.setCurrentSessionFee(schedulerService.getCurrentSessionFee(room.getRoomId()));
+            // 送风中的房间使用实时总费用，否则使用房间对象上已结算的总费用
+            Double cachedTotalFee = schedulerService.getCachedTotalFee(room.getRoomId());
+            if (cachedTotalFee != null) {
+                room.setTotalFee(cachedTotalFee);
+            }
+        }
+        return rooms;
+    }
+
+    public Map<String, ServiceUnitView> currentServiceQueue() {
+        Map<String, ServiceUnitView> views = new HashMap<>();
+        for (Map.Entry<String, SchedulerService.ServiceUnit> e : schedulerService.getServiceQueue().entrySet()) {
+            views.put(e.getKey(), toView(e.getValue()));
+        }
+        return views;
+    }
+
+    public Map<String, WaitingInfoView> currentWaitingQueue() {
+        Map<String, WaitingInfoView> views = new HashMap<>();
+        for (Map.Entry<String, SchedulerService.WaitingInfo> e : schedulerService.getWaitingQueue().entrySet()) {
+            views.put(e.getKey(), toView(e.getValue()));
+        }
+        return views;
+    }
+
+    /**
+     * 快照中版本号大于 sinceVersion 的服务队列变化：仍在服务队列的房间为当前视图，
+     * 在 sinceVersion 之后离开服务队列的房间值为 null，其余变化（只涉及等待队列）不返回
+     */
+    public Map<String, ServiceUnitView> serviceQueueSince(SchedulerSnapshot snapshot, long sinceVersion) {
+        double now = timeService.getLogicSeconds();
+        Map<String, ServiceUnitView> views = new HashMap<>();
+        for (SchedulerSnapshot.Entry entry : snapshot.changedSince(sinceVersion)) {
+            if (entry.isServing()) {
+                views.put(entry.getRoomId(), toView(entry.serviceAt(now)));
+            } else if (entry.leftServiceSince(sinceVersion)) {
+                views.put(entry.getRoomId(), null);
+            }
+        }
+        return views;
+    }
+
+    /**
+     * 快照中版本号大于 sinceVersion 的等待队列变化：仍在等待队列的房间为当前视图，
+     * 在 sinceVersion 之后离开等待队列的房间值为 null，其余变化（只涉及服务队列）不返回
+     */
+    public Map<String, WaitingInfoView> waitingQueueSince(SchedulerSnapshot snapshot, long sinceVersion) {
+        double now = timeService.getLogicSeconds();
+        Map<String, WaitingInfoView> views = new HashMap<>();
+        for (SchedulerSnapshot.Entry entry : snapshot.changedSince(sinceVersion)) {
+            if (entry.isWaiting()) {
+                views.put(entry.getRoomId(), toView(entry.waitingAt(now)));
+            } else if (entry.leftWaitingSince(sinceVersion)) {
+                views.put(entry.getRoomId(), null);
+            }
+        }
+        return views;
+    }
+
+    private ServiceUnitView toView(SchedulerService.ServiceUnit unit) {
+        ServiceUnitView view = new ServiceUnitView();
+        view.setRoomId(unit.getRoomId());
+        view.setFanSpeed(unit.getFanSpeed());
+        view.setCurrentFee(unit.getCurrentFee());
+        view.setAcUnit(unit.getAcUnit());
+        view.setStartTime(timeService.toRealTime(unit.getStartTime()));
+        view.setServedDurationSeconds(timeService.logicSecondsToRealSeconds(unit.getServedDurationSeconds()));
+        return view;
+    }
+
+    private WaitingInfoView toView(SchedulerService.WaitingInfo info) {
+        WaitingInfoView view = new WaitingInfoView();
+        view.setRoomId(info.getRoomId());
+        view.setFanSpeed(info.getFanSpeed());
+        view.setWaitTimeRemaining(timeService.logicSecondsToRealSeconds(info.getWaitTimeRemaining()));
+        view.setTotalWaitTime(timeService.logicSecondsToRealSeconds(info.getTotalWaitTime()));
+        return view;
+    }
+
+    private void remove(SseEmitter emitter) {
+        subscribers.remove(emitter);
+        joining.remove(emitter);
+    }
+
+    private void tick() {
+        try {
+            if (subscribers.isEmpty() && joining.isEmpty()) {
+                lastRooms = null;
+                lastService = null;
+                lastWaiting = null;
+                return;
+            }
+            long now = System.nanoTime();
+            Map<String, RoomSummaryService.RoomSummary> rooms = new LinkedHashMap<>();
+            for (RoomSummaryService.RoomSummary room : roomSummaryService.all()) {
+                rooms.put(room.getRoomId(), room);
+            }
+            Map<String, ServiceUnitView> service = currentServiceQueue();
+            Map<String, WaitingInfoView> waiting = currentWaitingQueue();
+
+            if (lastRooms != null && !subscribers.isEmpty()) {
+                DashboardEvent delta = diff(rooms, service, waiting);
+                if (delta != null) {
+                    broadcast(subscribers, EVENT_DELTA, delta);
+                    lastSentAtNanos = now;
+                } else if (now - lastSentAtNanos >= TimeUnit.MILLISECONDS.toNanos(keepaliveMs)) {
+                    broadcast(subscribers, SseEmitter.event().comment("keepalive").build());
+                    lastSentAtNanos = now;
+                }
+            } else {
+                // 没有可比较的上一版本（首个连接）或只有新连接：新快照使用新的版本号
+                version++;
+            }
+            lastRooms = rooms;
+            lastService = service;
+            lastWaiting = waiting;
+
+            if (!joining.isEmpty()) {
+                List<SseEmitter> joined = new ArrayList<>();
+                SseEmitter emitter;
+                while ((emitter = joining.poll()) != null) {
+                    joined.add(emitter);
+                }
+                DashboardEvent snapshot = new DashboardEvent();
+                snapshot.setVersion(version);
+                snapshot.setRooms(new ArrayList<>(rooms.values()));
+                snapshot.setServiceQueue(service);
+                snapshot.setWaitingQueue(waiting);
+                snapshot.setRemovedService(List.of());
+                snapshot.setRemovedWaiting(List.of());
+                // 先发送快照再加入订阅者列表，保证快照之后的增量版本连续
+                broadcast(joined, EVENT_SNAPSHOT, snapshot);
+                subscribers.addAll(joined);
+            }
+        } catch (Exception e) {
+            log.error("Dashboard stream tick failed", e);
+        }
+    }
+
+    // 与上一版本比较，无变化时返回 null
+    private DashboardEvent diff(Map<String, RoomSummaryService.RoomSummary> rooms, Map<String, ServiceUnitView> service,
+                                Map<String, WaitingInfoView> waiting) {
+        List<RoomSummaryService.RoomSummary> changedRooms = new ArrayList<>();
+        for (RoomSummaryService.RoomSummary room : rooms.values()) {
+            if (!room.equals(lastRooms.get(room.getRoomId()))) {
+                changedRooms.add(room);
+            }
+        }
+        Map<String, ServiceUnitView> changedService = changed(lastService, service);
+        Map<String, WaitingInfoView> changedWaiting = changed(lastWaiting, waiting);
+        List<String> removedService = removed(lastService, service);
+        List<String> removedWaiting = removed(lastWaiting, waiting);
+        if (changedRooms.isEmpty() && changedService.isEmpty() && changedWaiting.isEmpty()
+                && removedService.isEmpty() && removedWaiting.isEmpty()) {
+            return null;
+        }
+        DashboardEvent delta = new DashboardEvent();
+        delta.setVersion(++version);
+        delta.setRooms(changedRooms);
+        delta.setServiceQueue(changedService);
+        delta.setWaitingQueue(changedWaiting);
+        delta.setRemovedService(removedService);
+        delta.setRemovedWaiting(removedWaiting);
+        return delta;
+    }
+
+    private static <V> Map<String, V> changed(Map<String, V> last, Map<String, V> current) {
+        Map<String, V> changed = new HashMap<>();
+        for (Map.Entry<String, V> e : current.entrySet()) {
+            if (!Objects.equals(e.getValue(), last.get(e.getKey()))) {
+                changed.put(e.getKey(), e.getValue());
+            }
+        }
+        return changed;
+    }
+
+    private static List<String> removed(Map<String, ?> last, Map<String, ?> current) {
+        List<String> removed = new ArrayList<>();
+        for (String key : last.keySet()) {
+            if (!current.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+        return removed;
+    }
+
+    private void broadcast(List<SseEmitter> emitters, String name, DashboardEvent event) throws Exception {
+        // 只序列化一次，所有连接写出同一份数据
+        String json = objectMapper.writeValueAsString(event);
+        eventsBuilt.incrementAndGet();
+        broadcast(emitters, SseEmitter.event()
+                .id(String.valueOf(event.getVersion()))
+                .name(name)
+                .data(json, MediaType.APPLICATION_JSON)
+                .build());
+    }
+
+    private void broadcast(List<SseEmitter> emitters, Set<ResponseBodyEmitter.DataWithMediaType> items) {
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(items);
+                writes.incrementAndGet();
+            } catch (Exception e) {
+                // 连接已断开
+                remove(emitter);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.bupt.hotel.service;
+
+import com.bupt.hotel.entity.Room;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 客房面板的状态查询：完全由内存状态提供，支持按房间 ETag 的条件请求与长轮询。
+ * ETag 由房间状态版本号（每次修改加一）与按显示精度取整的温度、费用组成，两次请求之间状态没有可见变化时返回 304。
+ * 长轮询请求以 DeferredResult 挂起，不占用请求线程；房间被修改时立即唤醒复查，
+ * 温度与费用沿轨迹的连续变化由 guest-status-poller 线程按固定间隔复查。
+ * 每个房间每次复查只求值一次，同一房间的所有挂起请求共享结果。
+ */
+@Service
+@Slf4j
+public class GuestStatusService {
+
+    @Autowired
+    private SchedulerService schedulerService;
+
+    @Autowired
+    private RoomStateStore roomStateStore;
+
+    // 长轮询的最长挂起时间 (ms)，超时返回 304
+    @Value("${hotel.guest.status.long-poll-max-ms:30000}")
+    private long longPollMaxMs;
+
+    // 挂起请求的复查间隔 (ms)：温度、费用连续变化到可见精度的最大发现延迟
+    @Value("${hotel.guest.status.recheck-ms:500}")
+    private long recheckMs;
+
+    /**
+     * 房间当前状态（副本）及其 ETag
+     */
+    public static final class Status {
+        private final Room room;
+        private final String etag;
+
+        Status(Room room, String etag) {
+            this.room = room;
+            this.etag = etag;
+        }
+
+        public Room getRoom() {
+            return room;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    private static final class Waiter {
+        private final DeferredResult<ResponseEntity<Room>> result;
+        private final String etag;
+
+        Waiter(DeferredResult<ResponseEntity<Room>> result, String etag) {
+            this.result = result;
+            this.etag = etag;
+        }
+    }
+
+    // RoomId -> 挂起的长轮询请求（房间数有限，队列创建后不移除）
+    private final Map<String, Queue<Waiter>> waiters = new ConcurrentHashMap<>();
+    // 已安排一次立即复查
+    private final AtomicBoolean recheckScheduled = new AtomicBoolean();
+
+    private ScheduledExecutorService poller;
+
+    @PostConstruct
+    public void init() {
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "guest-status-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(this::recheck, recheckMs, recheckMs, TimeUnit.MILLISECONDS);
+        roomStateStore.addChangeListener(roomId -> {
+            // 在修改方线程（调度线程等）上调用：只判断是否有挂起请求并合并唤醒
+            Queue<Waiter> queue = waiters.get(roomId);
+            if (queue != null && !queue.isEmpty() && recheckScheduled.compareAndSet(false, true)) {
+                poller.execute(this::recheck);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    /**
+     * 房间当前状态：温度与费用按调度轨迹插值到当前时刻
+     */
+    public Status status(String roomId) {
+        // 先读版本号再读状态：读取期间发生的修改会使下一次请求得到新的 ETag
+        long version = roomStateStore.versionOf(roomId);
+        Room room = schedulerService.getCurrentState(roomId);
+        return new Status(room, etagOf(version, room));
+    }
+
+    /**
+     * 长轮询：状态的 ETag 与 ifNoneMatch 不同时立即返回，否则挂起到状态变化或 waitMs 超时（超时返回 304）
+     */
+    public DeferredResult<ResponseEntity<Room>> await(String roomId, String ifNoneMatch, long waitMs) {
+        long timeout = Math.max(0L, Math.min(waitMs, longPollMaxMs));
+        Status current = status(roomId);
+        DeferredResult<ResponseEntity<Room>> result = new DeferredResult<>(timeout,
+                () -> notModified(current.getEtag()));
+        if (!current.getEtag().equals(ifNoneMatch) || timeout == 0L) {
+            result.setResult(current.getEtag().equals(ifNoneMatch) ? notModified(current.getEtag()) : ok(current));
+            return result;
+        }
+        Waiter waiter = new Waiter(result, current.getEtag());
+        Queue<Waiter> queue = waiters.computeIfAbsent(roomId, id -> new ConcurrentLinkedQueue<>());
+        queue.add(waiter);
+        result.onCompletion(() -> queue.remove(waiter));
+        return result;
+    }
+
+    private void recheck() {
+        recheckScheduled.set(false);
+        for (Map.Entry<String, Queue<Waiter>> e : waiters.entrySet()) {
+            Queue<Waiter> queue = e.getValue();
+            if (queue.isEmpty()) {
+                continue;
+            }
+            try {
+                Status current = status(e.getKey());
+                ResponseEntity<Room> response = null;
+                for (Waiter waiter : queue) {
+                    if (!waiter.etag.equals(current.getEtag())) {
+                        if (response == null) {
+                            response = ok(current);
+                        }
+                        waiter.result.setResult(response);
+                    }
+                }
+            } catch (Exception ex) {
+                log.warn("Guest status recheck failed for room {}", e.getKey(), ex);
+            }
+        }
+    }
+
+    // 版本号 + 温度（0.1 度）+ 累计费用与本次会话费用（分），与面板显示精度一致
+    private static String etagOf(long version, Room room) {
+        return "\"" + version
+                + "-" + (room.getCurrentTemp() == null ? "n" : Math.round(room.getCurrentTemp() * 10))
+                + "-" + (room.getTotalFee() == null ? "n" : Math.round(room.getTotalFee() * 100))
+                + "-" + (room.getCurrentSessionFee() == null ? "n" : Math.round(room.getCurrentSessionFee() * 100))
+                + "\"";
+    }
+
+    public static ResponseEntity<Room> ok(Status status) {
+        return ResponseEntity.ok().eTag(status.getEtag()).body(status.getRoom());
+    }
+
+    public static ResponseEntity<Room> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+}
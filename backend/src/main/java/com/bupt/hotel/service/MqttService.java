@@ -1,15 +1,20 @@
 package com.bupt.hotel.service;
 
+import com.bupt.hotel.config.EmbeddedMqttBroker;
 import com.bupt.hotel.entity.FanSpeed;
 import com.bupt.hotel.entity.Mode;
 import com.bupt.hotel.entity.Room;
-import com.bupt.hotel.repository.RoomRepository;
+import com.bupt.hotel.entity.RoomStatus;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import com.bupt.hotel.util.LatencyHistogram;
+import org.eclipse.paho.client.mqttv3.DisconnectedBufferOptions;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
-import org.eclipse.paho.client.mqttv3.MqttCallback;
-import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
@@ -20,8 +25,27 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.CompletableFuture;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 @Service
 @Slf4j
@@ -39,15 +63,392 @@ public class MqttService {
     @Value("${mqtt.topic.command}")
     private String commandTopic;
 
+    @Value("${mqtt.topic.aggregate.prefix:hotel/ac/group/}")
+    private String aggregateTopicPrefix;
+
+    // 状态发布的合并窗口 (ms)：同一房间在一个窗口内多次变化只发布一次最新状态
+    @Value("${hotel.mqtt.publish.flush-interval-ms:200}")
+    private long publishFlushIntervalMs;
+
+    // 待发布房间队列的容量，队列满时丢弃新的发布请求并计数
+    @Value("${hotel.mqtt.publish.queue-capacity:1024}")
+    private int publishQueueCapacity;
+
+    // 死区：状态、模式、风速、目标温度与开关机未变化时，温度变化达到该值（度）才发布
+    @Value("${hotel.mqtt.publish.temp-deadband:0.1}")
+    private double tempDeadband;
+
+    // 死区：累计费用变化达到该值（元）才发布
+    @Value("${hotel.mqtt.publish.fee-deadband:0.1}")
+    private double feeDeadband;
+
+    // 心跳间隔 (ms)：超过该时间未发布的房间即使没有变化也发布一次，0 表示关闭心跳
+    @Value("${hotel.mqtt.publish.heartbeat-ms:30000}")
+    private long heartbeatMs;
+
+    // 状态负载格式：json（完整房间对象，默认）或 binary（定长紧凑编码，见 StatusPayloadCodec）
+    @Value("${hotel.mqtt.publish.payload-format:json}")
+    private String payloadFormat;
+
+    // 每个房间的保留状态主题 (<prefix><roomId>/state)：新连接的面板可立即从 Broker 获得最近状态
+    @Value("${hotel.mqtt.retained.enabled:true}")
+    private boolean retainedEnabled;
+
+    // 保留状态只在有意义的变化时更新：离散字段变化，或温度/累计费用变化达到以下死区（度/元）
+    @Value("${hotel.mqtt.retained.temp-deadband:0.5}")
+    private double retainedTempDeadband;
+
+    @Value("${hotel.mqtt.retained.fee-deadband:1.0}")
+    private double retainedFeeDeadband;
+
+    // 汇总帧分组：none 不发布，floor 按楼层，zone 按调度区域（hotel.ac.partition）
+    @Value("${hotel.mqtt.publish.aggregate:floor}")
+    private String aggregate;
+
+    // 在途窗口：已交给客户端但尚未写出的状态消息上限，窗口满时房间留待下一个窗口发布
+    @Value("${hotel.mqtt.publish.max-inflight:64}")
+    private int maxInflight;
+
+    // 断线重连期间的离线缓冲区大小，满时淘汰最旧的消息
+    @Value("${hotel.mqtt.publish.offline-buffer-size:1000}")
+    private int offlineBufferSize;
+
+    // 首次连接失败后的重试间隔 (ms)，连接成功后由客户端自动重连
+    @Value("${hotel.mqtt.connect-retry-ms:5000}")
+    private long connectRetryMs;
+
+    // 命令防抖窗口 (ms)：同一房间窗口内连续的 CHANGE_STATE 合并为一条（后到的字段覆盖先到的）
+    @Value("${hotel.mqtt.command.debounce-ms:300}")
+    private long commandDebounceMs;
+
+    // 每个房间待执行命令的上限，已满时的处理见 enqueueCommand
+    @Value("${hotel.mqtt.command.mailbox-capacity:16}")
+    private int commandMailboxCapacity;
+
+    // 虚拟线程模式（与 Web 请求线程共用 Spring Boot 的开关）：各房间的命令在各自的虚拟线程上执行，
+    // 等待调度期间不占用平台线程，不同房间的命令不再排在同一个线程上；状态发布线程也使用虚拟线程
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     @Autowired
     @Lazy
     private SchedulerService schedulerService;
 
     @Autowired
-    private RoomRepository roomRepository;
+    private RoomStateStore roomStateStore;
+
+    @Autowired
+    private RoomRegistry roomRegistry;
+
+    // local-broker profile 下的进程内 Broker，注入以保证其先于客户端启动
+    @Autowired(required = false)
+    private EmbeddedMqttBroker embeddedBroker;
+
+    // 房间序号 -> 状态主题 / 保留状态主题，首次发布时拼接并缓存
+    private final TopicCache statusTopics = new TopicCache("/status");
+    private final TopicCache stateTopics = new TopicCache("/state");
+
+    private MqttAsyncClient client;
+    private MqttConnectOptions connectOptions;
+    private volatile boolean everConnected;
+    // 使用 Spring 配置的 ObjectMapper（已注册 JavaTimeModule），与 REST 接口的 JSON 格式一致
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 状态发布：发布方只标记房间为待发布，由 mqtt-status-flusher 线程按窗口合并后发布
+    private volatile AtomicIntegerArray pendingFlags = new AtomicIntegerArray(0);
+    private BlockingQueue<Integer> pendingRooms;
+    private ScheduledExecutorService publishFlusher;
+    private final AtomicLong publishRequests = new AtomicLong();
+    private final AtomicLong publishedMessages = new AtomicLong();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    private final AtomicLong droppedRequests = new AtomicLong();
+    private final AtomicLong suppressedMessages = new AtomicLong();
+    private final AtomicLong heartbeatMessages = new AtomicLong();
+    private final AtomicLong aggregateFrames = new AtomicLong();
+    private final AtomicLong retainedMessages = new AtomicLong();
+    private final AtomicLong throttledMessages = new AtomicLong();
+    private final AtomicLong failedDeliveries = new AtomicLong();
+
+    // 异步发布：在途窗口、送达延迟与二进制负载缓冲池（消息写出后归还）
+    private Semaphore inflightWindow;
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private final BlockingQueue<byte[]> binaryBuffers = new ArrayBlockingQueue<>(256);
+    private final IMqttActionListener deliveryListener = new IMqttActionListener() {
+        @Override
+        public void onSuccess(IMqttToken token) {
+            complete((Delivery) token.getUserContext(), true);
+        }
+
+        @Override
+        public void onFailure(IMqttToken token, Throwable exception) {
+            complete((Delivery) token.getUserContext(), false);
+        }
+    };
+
+    // 命令接收：回调线程只解码并放入房间信箱，由 mqtt-command-worker 线程（虚拟线程模式下为各房间的虚拟线程）按房间顺序执行
+    private volatile Mailbox[] mailboxes = new Mailbox[0];
+    private ScheduledExecutorService commandWorker;
+    // 虚拟线程模式下执行命令的执行器（每个任务一个虚拟线程），平台线程模式下为 null
+    private ExecutorService commandExecutor;
+    private final AtomicLong receivedCommands = new AtomicLong();
+    private final AtomicLong rejectedCommands = new AtomicLong();
+    private final AtomicLong droppedCommands = new AtomicLong();
+    private final AtomicLong collapsedCommands = new AtomicLong();
+    private final AtomicLong executedCommands = new AtomicLong();
+    private final AtomicInteger commandDepth = new AtomicInteger();
+    // 接收速率采样（getCommandStats 调用间隔内的平均值）
+    private long rateSampleNanos = System.nanoTime();
+    private long rateSampleCount;
+    private double receiveRate;
+
+    // 每个房间最近一次发布的状态、最近一次发布的保留状态与汇总分组，仅由发布线程访问
+    private SentState sentState = new SentState(0);
+    private SentState retainedState = new SentState(0);
+    private Groups groups;
+    private final Sample sample = new Sample();
+
+    private boolean binaryPayload;
+
+    /**
+     * 本次读取的房间状态（定点数），发布线程复用同一个实例
+     */
+    private static final class Sample {
+        private int status; // 枚举序号，SentState.NONE 表示为空
+        private int mode;
+        private int fanSpeed;
+        private int isOn;
+        private int targetCenti;
+        private int tempCenti;
+        private long totalFeeMilli;
+        private long sessionFeeMilli;
 
-    private MqttClient client;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+        void load(Room room) {
+            status = room.getStatus() == null ? SentState.NONE : room.getStatus().ordinal();
+            mode = room.getMode() == null ? SentState.NONE : room.getMode().ordinal();
+            fanSpeed = room.getFanSpeed() == null ? SentState.NONE : room.getFanSpeed().ordinal();
+            isOn = room.getIsOn() == null ? SentState.NONE : (room.getIsOn() ? 1 : 0);
+            targetCenti = room.getTargetTemp() == null ? SentState.NONE : RoomLedger.toCenti(room.getTargetTemp());
+            tempCenti = room.getCurrentTemp() == null ? SentState.NONE : RoomLedger.toCenti(room.getCurrentTemp());
+            totalFeeMilli = room.getTotalFee() == null ? SentState.NONE : RoomLedger.toMilli(room.getTotalFee());
+            sessionFeeMilli = room.getCurrentSessionFee() == null ? 0L : RoomLedger.toMilli(room.getCurrentSessionFee());
+        }
+    }
+
+    /**
+     * 按房间序号存放的最近一次发布的状态（基本类型数组），用于死区判断与心跳
+     */
+    private static final class SentState {
+        private static final int NONE = Integer.MIN_VALUE;
+
+        private final boolean[] sent;
+        private final long[] sentAtNanos;
+        private final int[] status; // 枚举序号，NONE 表示为空
+        private final int[] mode;
+        private final int[] fanSpeed;
+        private final int[] isOn;
+        private final int[] targetCenti;
+        private final int[] tempCenti;
+        private final long[] totalFeeMilli;
+        private final byte[][] payload; // 最近一次发布的负载，用于拼装汇总帧
+
+        SentState(int rooms) {
+            sent = new boolean[rooms];
+            sentAtNanos = new long[rooms];
+            status = new int[rooms];
+            mode = new int[rooms];
+            fanSpeed = new int[rooms];
+            isOn = new int[rooms];
+            targetCenti = new int[rooms];
+            tempCenti = new int[rooms];
+            totalFeeMilli = new long[rooms];
+            payload = new byte[rooms][];
+        }
+
+        int size() {
+            return sent.length;
+        }
+
+        /**
+         * 是否从未发布过，或离散字段变化，或温度/累计费用的变化达到死区
+         */
+        boolean differs(int ordinal, Sample current, int tempDeadbandCenti, long feeDeadbandMilli) {
+            return !sent[ordinal]
+                    || current.status != status[ordinal]
+                    || current.mode != mode[ordinal]
+                    || current.fanSpeed != fanSpeed[ordinal]
+                    || current.isOn != isOn[ordinal]
+                    || current.targetCenti != targetCenti[ordinal]
+                    || movedBeyond(tempCenti[ordinal], current.tempCenti, tempDeadbandCenti)
+                    || movedBeyond(totalFeeMilli[ordinal], current.totalFeeMilli, feeDeadbandMilli);
+        }
+
+        void record(int ordinal, Sample current, long now) {
+            sent[ordinal] = true;
+            sentAtNanos[ordinal] = now;
+            status[ordinal] = current.status;
+            mode[ordinal] = current.mode;
+            fanSpeed[ordinal] = current.fanSpeed;
+            isOn[ordinal] = current.isOn;
+            targetCenti[ordinal] = current.targetCenti;
+            tempCenti[ordinal] = current.tempCenti;
+            totalFeeMilli[ordinal] = current.totalFeeMilli;
+        }
+
+        // 数值从无到有（或相反）视为变化，否则变化量达到死区才视为变化
+        private static boolean movedBeyond(long last, long current, long deadband) {
+            if (last == NONE || current == NONE) {
+                return last != current;
+            }
+            return Math.abs(current - last) >= Math.max(1L, deadband);
+        }
+    }
+
+    /**
+     * 按房间序号缓存的房间主题 (<prefix><roomId><suffix>)
+     */
+    private final class TopicCache {
+        private final String suffix;
+        private volatile AtomicReferenceArray<String> topics = new AtomicReferenceArray<>(0);
+
+        TopicCache(String suffix) {
+            this.suffix = suffix;
+        }
+
+        String of(String roomId) {
+            int ordinal = roomRegistry.ordinalOf(roomId);
+            if (ordinal < 0) {
+                return statusTopicPrefix + roomId + suffix;
+            }
+            AtomicReferenceArray<String> cached = topics;
+            if (cached.length() != roomRegistry.size()) {
+                cached = new AtomicReferenceArray<>(roomRegistry.size());
+                topics = cached;
+            }
+            String topic = cached.get(ordinal);
+            if (topic == null) {
+                topic = statusTopicPrefix + roomId + suffix;
+                cached.set(ordinal, topic);
+            }
+            return topic;
+        }
+    }
+
+    /**
+     * 保留状态主题的 JSON 负载：只包含面板需要的字段（不含入住人信息）
+     */
+    @Data
+    public static class RoomState {
+        private String roomId;
+        private RoomStatus status;
+        private Mode mode;
+        private FanSpeed fanSpeed;
+        private Boolean isOn;
+        private Double currentTemp;
+        private Double targetTemp;
+        private Double currentSessionFee;
+        private Double totalFee;
+
+        static RoomState of(Room room) {
+            RoomState state = new RoomState();
+            state.setRoomId(room.getRoomId());
+            state.setStatus(room.getStatus());
+            state.setMode(room.getMode());
+            state.setFanSpeed(room.getFanSpeed());
+            state.setIsOn(room.getIsOn());
+            state.setCurrentTemp(room.getCurrentTemp());
+            state.setTargetTemp(room.getTargetTemp());
+            state.setCurrentSessionFee(room.getCurrentSessionFee());
+            state.setTotalFee(room.getTotalFee());
+            return state;
+        }
+    }
+
+    /**
+     * 汇总帧分组：房间序号 -> 分组序号，以及每个分组的成员与主题。本窗口内有房间发布过的分组标记为待发布
+     */
+    private static final class Groups {
+        private final int[] groupOf;
+        private final String[] names;
+        private final String[] topics;
+        private final int[][] members; // 按房间序号升序
+        private final String[][] memberIds;
+        private final boolean[] dirty;
+
+        Groups(int[] groupOf, String[] names, String[] topics, int[][] members, String[][] memberIds) {
+            this.groupOf = groupOf;
+            this.names = names;
+            this.topics = topics;
+            this.members = members;
+            this.memberIds = memberIds;
+            this.dirty = new boolean[names.length];
+        }
+    }
+
+    private enum SendResult {
+        SENT, // 已交给客户端
+        FAILED, // 发布失败
+        THROTTLED // 在途窗口已满
+    }
+
+    /**
+     * 一条已交给客户端的消息：发布时刻、是否占用在途窗口名额，以及需要归还的二进制缓冲区
+     */
+    private static final class Delivery {
+        private final long startNanos;
+        private final boolean windowed;
+        private final byte[] pooledBuffer;
+
+        Delivery(long startNanos, boolean windowed, byte[] pooledBuffer) {
+            this.startNanos = startNanos;
+            this.windowed = windowed;
+            this.pooledBuffer = pooledBuffer;
+        }
+    }
+
+    /**
+     * 房间命令信箱：按到达顺序保存待执行的命令，scheduled 表示已安排执行线程处理。
+     * 同一房间同一时刻只有一个线程在执行（running），执行期间到期的处理由该线程执行完后接着处理（rerun）
+     */
+    private static final class Mailbox {
+        private final ArrayDeque<MqttCommand> commands = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean running;
+        private boolean rerun;
+    }
+
+    @Data
+    public static class CommandStats {
+        private long received; // 收到的命令消息数
+        private long rejected; // 无法解析、类型未知或房间未登记的命令数
+        private long dropped; // 房间信箱已满而丢弃的命令数（含为开关机命令让位的 CHANGE_STATE）
+        private long collapsed; // 防抖窗口内被后续 CHANGE_STATE 合并的命令数
+        private long executed; // 已交给调度器执行的命令数
+        private int depth; // 当前各房间信箱中待执行的命令总数
+        private double receivedPerSecond; // 最近一个采样间隔内的接收速率
+    }
+
+    @Data
+    public static class PublishStats {
+        private long requests; // publishStatus 调用次数
+        private long published; // 实际发布的消息数
+        private long coalesced; // 与窗口内已待发布的同一房间合并的请求数
+        private long dropped; // 队列已满或房间未登记而丢弃的请求数
+        private long suppressed; // 变化未超过死区而未发布的消息数
+        private long heartbeats; // 因心跳到期（无有效变化）而发布的消息数
+        private long frames; // 发布的楼层/区域汇总帧数
+        private long retained; // 发布的房间保留状态消息数
+        private long throttled; // 在途窗口已满而推迟到下一个窗口的消息数
+        private long failed; // 交给客户端后写出失败的消息数
+        private int inflight; // 当前在途消息数
+        private int buffered; // 断线期间离线缓冲区中的消息数
+        private long delivered; // 已写出的消息数（含离线缓冲后写出的）
+        private double latencyMeanMs; // 从交给客户端到写出的平均延迟
+        private double latencyP50Ms;
+        private double latencyP99Ms;
+        private double latencyMaxMs;
+        private int pending; // 当前待发布的房间数
+    }
 
     @Data
     public static class MqttCommand {
@@ -60,14 +461,58 @@ public class MqttService {
 
     @PostConstruct
     public void init() {
+        if ("binary".equalsIgnoreCase(payloadFormat)) {
+            binaryPayload = true;
+        } else if (!"json".equalsIgnoreCase(payloadFormat)) {
+            log.warn("Unknown MQTT payload format '{}', falling back to json", payloadFormat);
+        }
+        if (!"none".equals(aggregate) && !"floor".equals(aggregate) && !"zone".equals(aggregate)) {
+            throw new IllegalArgumentException("Invalid hotel.mqtt.publish.aggregate: " + aggregate);
+        }
+        pendingRooms = new ArrayBlockingQueue<>(publishQueueCapacity);
+        publishFlusher = Executors.newSingleThreadScheduledExecutor(threadFactory("mqtt-status-flusher"));
+        publishFlusher.scheduleWithFixedDelay(() -> {
+            try {
+                flushStatus();
+            } catch (Exception e) {
+                log.error("MQTT status flush failed", e);
+            }
+        }, publishFlushIntervalMs, publishFlushIntervalMs, TimeUnit.MILLISECONDS);
+        commandWorker = Executors.newSingleThreadScheduledExecutor(threadFactory("mqtt-command-worker"));
+        if (virtualThreads) {
+            commandExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mqtt-command-", 0).factory());
+        }
+
+        inflightWindow = new Semaphore(maxInflight);
         try {
-            client = new MqttClient(brokerUrl, clientId + "_" + System.currentTimeMillis(), new MemoryPersistence());
-            MqttConnectOptions options = new MqttConnectOptions();
-            options.setCleanSession(true);
-            options.setConnectionTimeout(10);
-            options.setAutomaticReconnect(true);
+            client = new MqttAsyncClient(brokerUrl, clientId + "_" + System.currentTimeMillis(), new MemoryPersistence());
+            DisconnectedBufferOptions bufferOptions = new DisconnectedBufferOptions();
+            bufferOptions.setBufferEnabled(true);
+            bufferOptions.setBufferSize(offlineBufferSize);
+            bufferOptions.setDeleteOldestMessages(true);
+            bufferOptions.setPersistBuffer(false);
+            client.setBufferOpts(bufferOptions);
+
+            connectOptions = new MqttConnectOptions();
+            connectOptions.setCleanSession(true);
+            connectOptions.setConnectionTimeout(10);
+            connectOptions.setAutomaticReconnect(true);
+            // 汇总帧以 QoS 1 发布，客户端自身的 QoS 1 在途上限不小于发布窗口（且需大于 3，否则重连后离线缓冲区无法回放）
+            connectOptions.setMaxInflight(Math.max(maxInflight, 10));
+
+            client.setCallback(new MqttCallbackExtended() {
+                @Override
+                public void connectComplete(boolean reconnect, String serverURI) {
+                    everConnected = true;
+                    // cleanSession 下重连后订阅会丢失，每次连接成功都重新订阅
+                    try {
+                        client.subscribe(commandTopic, 1);
+                        log.info("Connected to MQTT Broker: {} and subscribed to {}", serverURI, commandTopic);
+                    } catch (MqttException e) {
+                        log.error("Failed to subscribe to {}", commandTopic, e);
+                    }
+                }
 
-            client.setCallback(new MqttCallback() {
                 @Override
                 public void connectionLost(Throwable cause) {
                     log.warn("MQTT Connection Lost", cause);
@@ -82,44 +527,219 @@ public class MqttService {
                 public void deliveryComplete(IMqttDeliveryToken token) {
                 }
             });
+            connect();
+        } catch (MqttException e) {
+            log.error("Failed to create MQTT client", e);
+        }
+    }
+
+    /**
+     * 异步连接，不阻塞启动；首次连接失败时按 connect-retry-ms 重试
+     */
+    private void connect() {
+        try {
+            client.connect(connectOptions, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                }
 
-            client.connect(options);
-            client.subscribe(commandTopic, 1);
-            log.info("Connected to MQTT Broker: {} and subscribed to {}", brokerUrl, commandTopic);
+                @Override
+                public void onFailure(IMqttToken token, Throwable exception) {
+                    log.warn("Failed to connect to MQTT broker {}, retrying in {} ms: {}", brokerUrl, connectRetryMs,
+                            exception.toString());
+                    publishFlusher.schedule(MqttService.this::connect, connectRetryMs, TimeUnit.MILLISECONDS);
+                }
+            });
         } catch (MqttException e) {
             log.error("Failed to connect to MQTT broker", e);
         }
     }
 
+    /**
+     * 在 MQTT 回调线程上只做解码与入队，不调用调度器，避免阻塞接收循环
+     */
     private void handleMessage(String topic, MqttMessage message) {
+        receivedCommands.incrementAndGet();
+        MqttCommand cmd;
         try {
-            String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
-            log.info("Received MQTT message on {}: {}", topic, payload);
-            MqttCommand cmd = objectMapper.readValue(payload, MqttCommand.class);
+            cmd = objectMapper.readValue(message.getPayload(), MqttCommand.class);
+        } catch (Exception e) {
+            rejectedCommands.incrementAndGet();
+            log.warn("Malformed MQTT command on {}", topic, e);
+            return;
+        }
+        log.debug("Received MQTT command on {}: {}", topic, cmd);
 
-            if (cmd.getRoomId() == null)
+        if (cmd.getRoomId() == null)
+            return;
+
+        String type = cmd.getType();
+        if (!"POWER_ON".equals(type) && !"POWER_OFF".equals(type) && !"CHANGE_STATE".equals(type)) {
+            rejectedCommands.incrementAndGet();
+            log.warn("Unknown command type: {}", type);
+            return;
+        }
+        int ordinal = roomRegistry.ordinalOf(cmd.getRoomId());
+        if (ordinal < 0) {
+            rejectedCommands.incrementAndGet();
+            return;
+        }
+        enqueueCommand(ordinal, cmd);
+    }
+
+    /**
+     * 放入房间信箱。CHANGE_STATE 在防抖窗口结束时执行，窗口内紧随其后的 CHANGE_STATE 合并到同一条命令；
+     * 开关机命令立即安排执行（连同信箱中在它之前的命令，保持到达顺序）。
+     * 信箱已满时开关机命令不会被丢弃：挤掉信箱中最早的 CHANGE_STATE；信箱中全是开关机命令时替换最后一条，
+     * 房间最终处于面板最后要求的开关状态。已满时到达的 CHANGE_STATE 被丢弃。丢弃或合并开关机命令时记录告警
+     */
+    private void enqueueCommand(int ordinal, MqttCommand cmd) {
+        Mailbox mailbox = mailboxOf(ordinal);
+        boolean change = "CHANGE_STATE".equals(cmd.getType());
+        // 因信箱已满被丢弃的命令，在锁外记录告警
+        MqttCommand dropped = null;
+        boolean schedule;
+        synchronized (mailbox) {
+            MqttCommand tail = mailbox.commands.peekLast();
+            if (change && tail != null && "CHANGE_STATE".equals(tail.getType())) {
+                if (cmd.getTargetTemp() != null) {
+                    tail.setTargetTemp(cmd.getTargetTemp());
+                }
+                if (cmd.getFanSpeed() != null) {
+                    tail.setFanSpeed(cmd.getFanSpeed());
+                }
+                collapsedCommands.incrementAndGet();
                 return;
+            }
+            if (mailbox.commands.size() >= commandMailboxCapacity) {
+                dropped = change ? cmd : evictForPower(mailbox.commands);
+                droppedCommands.incrementAndGet();
+            }
+            if (dropped != cmd) {
+                mailbox.commands.addLast(cmd);
+                if (dropped == null) {
+                    commandDepth.incrementAndGet();
+                }
+            }
+            schedule = dropped != cmd && !(mailbox.scheduled && change);
+            if (schedule) {
+                mailbox.scheduled = true;
+            }
+        }
+        if (dropped != null) {
+            log.warn("MQTT command mailbox of room {} is full ({} commands), dropped {}",
+                    cmd.getRoomId(), commandMailboxCapacity, dropped.getType());
+        }
+        if (schedule) {
+            commandWorker.schedule(() -> dispatchMailbox(ordinal), change ? commandDebounceMs : 0L, TimeUnit.MILLISECONDS);
+        }
+    }
 
-            switch (cmd.getType()) {
-                case "POWER_ON":
-                    handlePowerOn(cmd);
-                    break;
-                case "POWER_OFF":
-                    handlePowerOff(cmd);
-                    break;
-                case "CHANGE_STATE":
-                    handleChangeState(cmd);
-                    break;
-                default:
-                    log.warn("Unknown command type: {}", cmd.getType());
+    // 为开关机命令腾出位置：移除最早的 CHANGE_STATE；全是开关机命令时移除最后一条，由新命令决定最终开关状态
+    private static MqttCommand evictForPower(ArrayDeque<MqttCommand> commands) {
+        Iterator<MqttCommand> it = commands.iterator();
+        while (it.hasNext()) {
+            MqttCommand queued = it.next();
+            if ("CHANGE_STATE".equals(queued.getType())) {
+                it.remove();
+                return queued;
+            }
+        }
+        return commands.pollLast();
+    }
+
+    private Mailbox mailboxOf(int ordinal) {
+        Mailbox[] boxes = mailboxes;
+        if (boxes.length != roomRegistry.size()) {
+            synchronized (this) {
+                if (mailboxes.length != roomRegistry.size()) {
+                    Mailbox[] created = new Mailbox[roomRegistry.size()];
+                    for (int i = 0; i < created.length; i++) {
+                        created[i] = new Mailbox();
+                    }
+                    mailboxes = created;
+                }
+                boxes = mailboxes;
+            }
+        }
+        return boxes[ordinal];
+    }
+
+    private ThreadFactory threadFactory(String name) {
+        if (virtualThreads) {
+            return Thread.ofVirtual().name(name).factory();
+        }
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // 防抖到期：平台线程模式直接在 mqtt-command-worker 上执行，虚拟线程模式交给该房间的虚拟线程执行
+    private void dispatchMailbox(int ordinal) {
+        if (commandExecutor == null) {
+            drainMailbox(ordinal);
+        } else {
+            commandExecutor.execute(() -> drainMailbox(ordinal));
+        }
+    }
+
+    /**
+     * 按到达顺序执行房间信箱中的全部命令。同一房间已有线程在执行时只做标记，由该线程执行完后再处理一次
+     */
+    private void drainMailbox(int ordinal) {
+        Mailbox mailbox = mailboxOf(ordinal);
+        synchronized (mailbox) {
+            if (mailbox.running) {
+                mailbox.rerun = true;
+                return;
+            }
+            mailbox.running = true;
+        }
+        boolean again = true;
+        while (again) {
+            List<MqttCommand> batch;
+            synchronized (mailbox) {
+                batch = new ArrayList<>(mailbox.commands);
+                mailbox.commands.clear();
+                mailbox.scheduled = false;
+                mailbox.rerun = false;
+            }
+            executeCommands(batch);
+            synchronized (mailbox) {
+                again = mailbox.rerun;
+                mailbox.running = again;
+            }
+        }
+    }
+
+    private void executeCommands(List<MqttCommand> batch) {
+        commandDepth.addAndGet(-batch.size());
+        for (MqttCommand cmd : batch) {
+            try {
+                switch (cmd.getType()) {
+                    case "POWER_ON":
+                        handlePowerOn(cmd);
+                        break;
+                    case "POWER_OFF":
+                        handlePowerOff(cmd);
+                        break;
+                    case "CHANGE_STATE":
+                        handleChangeState(cmd);
+                        break;
+                    default:
+                        log.warn("Unknown command type: {}", cmd.getType());
+                }
+                executedCommands.incrementAndGet();
+            } catch (Exception e) {
+                log.error("Error handling MQTT command for room {}", cmd.getRoomId(), e);
             }
-        } catch (Exception e) {
-            log.error("Error handling MQTT message", e);
         }
     }
 
     private void handlePowerOn(MqttCommand cmd) {
-        Room room = roomRepository.findByRoomId(cmd.getRoomId()).orElse(null);
+        Room room = roomStateStore.findByRoomId(cmd.getRoomId()).orElse(null);
         if (room == null)
             return;
 
@@ -129,35 +749,30 @@ public class MqttService {
             return;
         }
 
-        room.setIsOn(true);
         // checkInTime is managed by Clerk
-        // room.setCheckInTime(LocalDateTime.now());
         // 总费用不应该在开机时重置，应该从入住开始累计
-        // room.setTotalFee(0.0);
-        roomRepository.save(room);
+        roomStateStore.update(cmd.getRoomId(), r -> r.setIsOn(true));
 
         schedulerService.requestSupply(cmd.getRoomId(), cmd.getMode(), cmd.getTargetTemp(), cmd.getFanSpeed());
     }
 
     private void handlePowerOff(MqttCommand cmd) {
-        Room room = roomRepository.findByRoomId(cmd.getRoomId()).orElse(null);
-        if (room == null)
+        boolean updated = roomStateStore.update(cmd.getRoomId(), room -> {
+            // 如果之前是开机状态，增加开关机次数（每次开关机算一天）
+            if (room.getIsOn() != null && room.getIsOn()) {
+                int count = (room.getPowerCycleCount() != null) ? room.getPowerCycleCount() : 0;
+                room.setPowerCycleCount(count + 1);
+            }
+            room.setIsOn(false);
+        }).isPresent();
+        if (!updated)
             return;
 
-        // 如果之前是开机状态，增加开关机次数（每次开关机算一天）
-        if (room.getIsOn() != null && room.getIsOn()) {
-            int count = (room.getPowerCycleCount() != null) ? room.getPowerCycleCount() : 0;
-            room.setPowerCycleCount(count + 1);
-        }
-
-        room.setIsOn(false);
-        roomRepository.save(room);
-
         schedulerService.stopSupply(cmd.getRoomId(), true);
     }
 
     private void handleChangeState(MqttCommand cmd) {
-        Room room = roomRepository.findByRoomId(cmd.getRoomId()).orElse(null);
+        Room room = roomStateStore.findByRoomId(cmd.getRoomId()).orElse(null);
         if (room == null || !room.getIsOn())
             return;
 
@@ -167,23 +782,392 @@ public class MqttService {
             return;
         }
 
-        schedulerService.requestSupply(cmd.getRoomId(), room.getMode(), cmd.getTargetTemp(), cmd.getFanSpeed());
+        // 合并后的命令只携带变化过的字段，未提供的字段沿用房间当前设置
+        Double targetTemp = cmd.getTargetTemp() != null ? cmd.getTargetTemp() : room.getTargetTemp();
+        FanSpeed fanSpeed = cmd.getFanSpeed() != null ? cmd.getFanSpeed() : room.getFanSpeed();
+        schedulerService.requestSupply(cmd.getRoomId(), room.getMode(), targetTemp, fanSpeed);
     }
 
-    public void publishStatus(String roomId, Room room) {
-        // 异步执行，避免阻塞主线程导致卡顿
-        CompletableFuture.runAsync(() -> {
-            if (client == null || !client.isConnected())
-                return;
+    @PreDestroy
+    public void shutdown() {
+        if (publishFlusher != null) {
+            publishFlusher.shutdown();
+        }
+        if (commandWorker != null) {
+            commandWorker.shutdown();
+        }
+        if (commandExecutor != null) {
+            commandExecutor.shutdown();
+        }
+        if (client != null) {
             try {
-                String topic = statusTopicPrefix + roomId + "/status";
-                String payload = objectMapper.writeValueAsString(room);
-                MqttMessage message = new MqttMessage(payload.getBytes(StandardCharsets.UTF_8));
-                message.setQos(0);
-                client.publish(topic, message);
-            } catch (Exception e) {
-                log.debug("Error publishing status for room {}", roomId, e);
+                client.disconnect().waitForCompletion(1000);
+                client.close();
+            } catch (MqttException e) {
+                log.debug("Error closing MQTT client", e);
+            }
+        }
+    }
+
+    /**
+     * 标记房间状态已变化，由发布线程在下一个合并窗口读取最新状态后发布。
+     * 窗口内同一房间的多次调用只发布一次。
+     */
+    public void publishStatus(String roomId) {
+        publishRequests.incrementAndGet();
+        int ordinal = roomRegistry.ordinalOf(roomId);
+        if (ordinal < 0) {
+            droppedRequests.incrementAndGet();
+            return;
+        }
+        AtomicIntegerArray flags = pendingFlags;
+        if (flags.length() != roomRegistry.size()) {
+            synchronized (this) {
+                if (pendingFlags.length() != roomRegistry.size()) {
+                    pendingFlags = new AtomicIntegerArray(roomRegistry.size());
+                }
+                flags = pendingFlags;
+            }
+        }
+        if (!flags.compareAndSet(ordinal, 0, 1)) {
+            coalescedRequests.incrementAndGet();
+            return;
+        }
+        if (!pendingRooms.offer(ordinal)) {
+            flags.set(ordinal, 0);
+            droppedRequests.incrementAndGet();
+        }
+    }
+
+    /**
+     * 发布本窗口内所有待发布房间的最新状态（每个房间最多一条消息，变化未超过死区的不发布），
+     * 然后为超过心跳间隔未发布的房间补发一次，最后为本窗口内有房间发布过的楼层/区域发布一条保留的汇总帧
+     */
+    private void flushStatus() {
+        List<Integer> batch = new ArrayList<>(pendingRooms.size());
+        pendingRooms.drainTo(batch);
+        AtomicIntegerArray flags = pendingFlags;
+        // 连接成功过之后，断线重连期间的消息进入离线缓冲区；从未连接成功时不发布
+        boolean connected = client != null && everConnected;
+        if (sentState.size() != roomRegistry.size()) {
+            sentState = new SentState(roomRegistry.size());
+            retainedState = new SentState(roomRegistry.size());
+            groups = "none".equals(aggregate) ? null : buildGroups();
+        }
+        long now = System.nanoTime();
+        for (Integer ordinal : batch) {
+            // 先清除待发布标记再读取状态：读取之后发生的变化会重新入队，在下一个窗口发布
+            flags.set(ordinal, 0);
+            if (connected && !publishIfChanged(ordinal, now, false)) {
+                // 在途窗口已满，房间重新入队到下一个窗口
+                if (flags.compareAndSet(ordinal, 0, 1) && !pendingRooms.offer(ordinal)) {
+                    flags.set(ordinal, 0);
+                }
+            }
+        }
+        if (connected && heartbeatMs > 0) {
+            long heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMs);
+            for (int ordinal = 0; ordinal < sentState.size(); ordinal++) {
+                if (!sentState.sent[ordinal] || now - sentState.sentAtNanos[ordinal] >= heartbeatNanos) {
+                    if (!publishIfChanged(ordinal, now, true)) {
+                        // 在途窗口已满，剩余房间的心跳留到下一个窗口
+                        break;
+                    }
+                }
+            }
+        }
+        if (connected && groups != null) {
+            for (int group = 0; group < groups.dirty.length; group++) {
+                if (groups.dirty[group] && publishFrame(group)) {
+                    groups.dirty[group] = false;
+                }
+            }
+        }
+    }
+
+    private Groups buildGroups() {
+        int rooms = roomRegistry.size();
+        int[] groupOf = new int[rooms];
+        Map<String, Integer> index = new LinkedHashMap<>();
+        List<List<Integer>> memberLists = new ArrayList<>();
+        for (int ordinal = 0; ordinal < rooms; ordinal++) {
+            String roomId = roomRegistry.roomIdOf(ordinal);
+            String name = "zone".equals(aggregate) ? schedulerService.zoneOf(roomId) : SchedulerService.floorOf(roomId);
+            int group = index.computeIfAbsent(name, k -> {
+                memberLists.add(new ArrayList<>());
+                return memberLists.size() - 1;
+            });
+            groupOf[ordinal] = group;
+            memberLists.get(group).add(ordinal);
+        }
+        String[] names = index.keySet().toArray(new String[0]);
+        String[] topics = new String[names.length];
+        int[][] members = new int[names.length][];
+        String[][] memberIds = new String[names.length][];
+        for (int group = 0; group < names.length; group++) {
+            topics[group] = aggregateTopicPrefix + names[group] + "/status";
+            List<Integer> list = memberLists.get(group);
+            members[group] = list.stream().mapToInt(Integer::intValue).toArray();
+            memberIds[group] = list.stream().map(roomRegistry::roomIdOf).toArray(String[]::new);
+        }
+        log.info("MQTT aggregate frames by {}: {} groups", aggregate, names.length);
+        return new Groups(groupOf, names, topics, members, memberIds);
+    }
+
+    /**
+     * 用分组内各房间最近一次发布的负载拼装汇总帧并以保留消息发布，新连接的订阅方可立即获得整层快照
+     */
+    private boolean publishFrame(int group) {
+        int[] members = groups.members[group];
+        byte[][] entries = new byte[members.length][];
+        for (int i = 0; i < members.length; i++) {
+            entries[i] = sentState.payload[members[i]];
+        }
+        byte[] frame = binaryPayload
+                ? StatusPayloadCodec.encodeFrame(groups.memberIds[group], entries)
+                : jsonFrame(groups.names[group], entries);
+        SendResult result = send(groups.topics[group], frame, true, null);
+        if (result == SendResult.THROTTLED) {
+            // 在途窗口已满，分组保持待发布
+            return false;
+        }
+        if (result == SendResult.SENT) {
+            aggregateFrames.incrementAndGet();
+        }
+        return true;
+    }
+
+    // {"group":"floor-1","rooms":[<房间 JSON>,...]}
+    private static byte[] jsonFrame(String group, byte[][] entries) {
+        byte[] head = ("{\"group\":\"" + group + "\",\"rooms\":[").getBytes(StandardCharsets.UTF_8);
+        int length = head.length + 2;
+        for (byte[] entry : entries) {
+            if (entry != null) {
+                length += entry.length + 1;
+            }
+        }
+        byte[] frame = new byte[length];
+        System.arraycopy(head, 0, frame, 0, head.length);
+        int offset = head.length;
+        for (byte[] entry : entries) {
+            if (entry == null) {
+                continue;
+            }
+            if (offset > head.length) {
+                frame[offset++] = ',';
+            }
+            System.arraycopy(entry, 0, frame, offset, entry.length);
+            offset += entry.length;
+        }
+        frame[offset++] = ']';
+        frame[offset++] = '}';
+        return offset == length ? frame : Arrays.copyOf(frame, offset);
+    }
+
+    /**
+     * 变化超过死区（或心跳到期）时发布房间状态
+     *
+     * @return 在途窗口已满、未能发布时返回 false
+     */
+    private boolean publishIfChanged(int ordinal, long now, boolean heartbeatDue) {
+        if (client.isConnected() && inflightWindow.availablePermits() == 0) {
+            throttledMessages.incrementAndGet();
+            return false;
+        }
+        String roomId = roomRegistry.roomIdOf(ordinal);
+        Room room = roomStateStore.findByRoomId(roomId).orElse(null);
+        if (room == null) {
+            return true;
+        }
+        schedulerService.applyCurrentState(room);
+
+        Sample current = sample;
+        current.load(room);
+
+        if (retainedEnabled && retainedState.differs(ordinal, current, RoomLedger.toCenti(retainedTempDeadband),
+                RoomLedger.toMilli(retainedFeeDeadband))) {
+            if (!publishRetainedState(ordinal, room, current, now)) {
+                return false;
+            }
+        }
+
+        SentState last = sentState;
+        boolean changed = last.differs(ordinal, current, RoomLedger.toCenti(tempDeadband),
+                RoomLedger.toMilli(feeDeadband));
+        if (!changed && !heartbeatDue) {
+            suppressedMessages.incrementAndGet();
+            return true;
+        }
+        byte[] payload;
+        byte[] pooledBuffer = null;
+        try {
+            if (binaryPayload) {
+                pooledBuffer = encodeBinary(current);
+                payload = pooledBuffer;
+            } else {
+                payload = objectMapper.writeValueAsBytes(room);
+            }
+        } catch (Exception e) {
+            log.debug("Error encoding status for room {}", roomId, e);
+            return true;
+        }
+        SendResult result = send(statusTopics.of(roomId), payload, false, pooledBuffer);
+        if (result != SendResult.SENT) {
+            return result != SendResult.THROTTLED;
+        }
+        publishedMessages.incrementAndGet();
+        if (!changed) {
+            heartbeatMessages.incrementAndGet();
+        }
+        last.record(ordinal, current, now);
+        if (groups != null) {
+            if (!binaryPayload) {
+                last.payload[ordinal] = payload;
+            } else {
+                // 二进制负载的缓冲区在写出后归还缓冲池，复制到该房间自己的定长数组
+                if (last.payload[ordinal] == null) {
+                    last.payload[ordinal] = new byte[StatusPayloadCodec.LENGTH];
+                }
+                System.arraycopy(payload, 0, last.payload[ordinal], 0, StatusPayloadCodec.LENGTH);
             }
-        });
+            groups.dirty[groups.groupOf[ordinal]] = true;
+        }
+        return true;
+    }
+
+    /**
+     * 以保留消息发布房间的紧凑状态（binary 格式时为定长编码，否则为只含面板字段的 JSON）
+     *
+     * @return 在途窗口已满、未能发布时返回 false
+     */
+    private boolean publishRetainedState(int ordinal, Room room, Sample current, long now) {
+        byte[] payload;
+        byte[] pooledBuffer = null;
+        try {
+            if (binaryPayload) {
+                pooledBuffer = encodeBinary(current);
+                payload = pooledBuffer;
+            } else {
+                payload = objectMapper.writeValueAsBytes(RoomState.of(room));
+            }
+        } catch (Exception e) {
+            log.debug("Error encoding retained state for room {}", room.getRoomId(), e);
+            return true;
+        }
+        SendResult result = send(stateTopics.of(room.getRoomId()), payload, true, pooledBuffer);
+        if (result == SendResult.SENT) {
+            retainedMessages.incrementAndGet();
+            retainedState.record(ordinal, current, now);
+        }
+        return result != SendResult.THROTTLED;
+    }
+
+    // 编码到缓冲池中的缓冲区，消息写出后归还
+    private byte[] encodeBinary(Sample current) {
+        byte[] buffer = binaryBuffers.poll();
+        if (buffer == null) {
+            buffer = new byte[StatusPayloadCodec.LENGTH];
+        }
+        StatusPayloadCodec.encode(buffer,
+                current.status == SentState.NONE ? -1 : current.status,
+                current.mode == SentState.NONE ? -1 : current.mode,
+                current.fanSpeed == SentState.NONE ? -1 : current.fanSpeed,
+                current.isOn == 1,
+                current.tempCenti == SentState.NONE ? StatusPayloadCodec.NONE_TEMP : current.tempCenti,
+                current.targetCenti == SentState.NONE ? StatusPayloadCodec.NONE_TEMP : current.targetCenti,
+                current.sessionFeeMilli,
+                current.totalFeeMilli == SentState.NONE ? 0L : current.totalFeeMilli);
+        return buffer;
+    }
+
+    /**
+     * 异步发布一条消息。房间状态为 QoS 0；保留消息（保留状态与汇总帧）为 QoS 1，部分 Broker 不保存 QoS 0 的保留消息。
+     * 在线时占用一个在途窗口名额（写出或确认后释放），断线重连期间进入离线缓冲区。
+     */
+    private SendResult send(String topic, byte[] payload, boolean retained, byte[] pooledBuffer) {
+        boolean windowed = client.isConnected();
+        if (windowed && !inflightWindow.tryAcquire()) {
+            throttledMessages.incrementAndGet();
+            recycle(pooledBuffer);
+            return SendResult.THROTTLED;
+        }
+        MqttMessage message = new MqttMessage(payload);
+        message.setQos(retained ? 1 : 0);
+        message.setRetained(retained);
+        try {
+            client.publish(topic, message, new Delivery(System.nanoTime(), windowed, pooledBuffer), deliveryListener);
+            return SendResult.SENT;
+        } catch (MqttException e) {
+            if (windowed) {
+                inflightWindow.release();
+            }
+            recycle(pooledBuffer);
+            log.debug("Error publishing to {}", topic, e);
+            return SendResult.FAILED;
+        }
+    }
+
+    private void complete(Delivery delivery, boolean success) {
+        if (delivery.windowed) {
+            inflightWindow.release();
+        }
+        recycle(delivery.pooledBuffer);
+        if (success) {
+            deliveryLatency.record(System.nanoTime() - delivery.startNanos);
+        } else {
+            failedDeliveries.incrementAndGet();
+        }
+    }
+
+    private void recycle(byte[] pooledBuffer) {
+        if (pooledBuffer != null) {
+            binaryBuffers.offer(pooledBuffer);
+        }
+    }
+
+    public PublishStats getPublishStats() {
+        PublishStats stats = new PublishStats();
+        stats.setRequests(publishRequests.get());
+        stats.setPublished(publishedMessages.get());
+        stats.setCoalesced(coalescedRequests.get());
+        stats.setDropped(droppedRequests.get());
+        stats.setSuppressed(suppressedMessages.get());
+        stats.setHeartbeats(heartbeatMessages.get());
+        stats.setFrames(aggregateFrames.get());
+        stats.setRetained(retainedMessages.get());
+        stats.setThrottled(throttledMessages.get());
+        stats.setFailed(failedDeliveries.get());
+        stats.setInflight(inflightWindow == null ? 0 : maxInflight - inflightWindow.availablePermits());
+        stats.setBuffered(client == null ? 0 : client.getBufferedMessageCount());
+        stats.setDelivered(deliveryLatency.getCount());
+        stats.setLatencyMeanMs(deliveryLatency.getMeanNanos() / 1e6);
+        stats.setLatencyP50Ms(deliveryLatency.percentileNanos(0.50) / 1e6);
+        stats.setLatencyP99Ms(deliveryLatency.percentileNanos(0.99) / 1e6);
+        stats.setLatencyMaxMs(deliveryLatency.getMaxNanos() / 1e6);
+        stats.setPending(pendingRooms.size());
+        return stats;
+    }
+
+    public CommandStats getCommandStats() {
+        CommandStats stats = new CommandStats();
+        long received = receivedCommands.get();
+        stats.setReceived(received);
+        stats.setRejected(rejectedCommands.get());
+        stats.setDropped(droppedCommands.get());
+        stats.setCollapsed(collapsedCommands.get());
+        stats.setExecuted(executedCommands.get());
+        stats.setDepth(commandDepth.get());
+        synchronized (this) {
+            long now = System.nanoTime();
+            long elapsed = now - rateSampleNanos;
+            // 距上次采样不足 1 秒时沿用上次的速率
+            if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+                receiveRate = (received - rateSampleCount) * 1e9 / elapsed;
+                rateSampleNanos = now;
+                rateSampleCount = received;
+            }
+            stats.setReceivedPerSecond(receiveRate);
+        }
+        return stats;
     }
 }
@@ -18,6 +18,9 @@ public class ReportService {
     @Autowired
     private BillingDetailRepository billingDetailRepository;
 
+    @Autowired
+    private BillingDetailWriter billingDetailWriter;
+
     @Autowired
     private TimeService timeService;
 
@@ -31,6 +34,7 @@ public class ReportService {
     }
 
     public GlobalReport generateGlobalReport(LocalDateTime start, LocalDateTime end) {
+        billingDetailWriter.flush();
         List<BillingDetail> details = billingDetailRepository.findByStartTimeBetween(start, end);
 
         GlobalReport report = new GlobalReport();
@@ -13,6 +13,7 @@ import org.springframework.transaction.annotation.Transactional;
 import jakarta.annotation.PostConstruct;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -21,6 +22,12 @@ public class RoomInitService {
     @Autowired
     private RoomRepository roomRepository;
 
+    @Autowired
+    private RoomStateStore roomStateStore;
+
+    @Autowired
+    private RoomRegistry roomRegistry;
+
     // 现有5个房间的配置（根据prompt.md）
     // 第一层的前5个房间（101-105）对应原设置的5个房间
     // 制冷模式初始温度：
@@ -139,5 +146,11 @@ public class RoomInitService {
         }
 
         log.info("Successfully initialized/updated all 40 rooms");
+
+        // 初始化完成后，将房间加载到内存状态表，作为模拟运行期间的权威数据
+        roomStateStore.load();
+
+        // 为所有房间分配稠密序号，供调度器、费用账本与 MQTT 主题缓存按数组下标访问
+        roomRegistry.build(roomRepository.findAll().stream().map(Room::getRoomId).collect(Collectors.toList()));
     }
 }
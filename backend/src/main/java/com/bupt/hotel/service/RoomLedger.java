@@ -0,0 +1,131 @@
+package com.bupt.hotel.service;
+
+import java.util.Arrays;
+
+/**
+ * 分片内的定点数账本：按 {@link RoomRegistry} 分配的房间序号把温度与费用存放在稠密的基本类型数组中。
+ * - 温度以厘度（0.01 度）的 int 表示
+ * - 费用以毫元（0.001 元）的 long 表示，结算时按分（0.01 元）四舍五入
+ * 送风期间的累计费用 = 已结算费用 + 本次会话费用；每次结算后两者重新对齐，
+ * 因此详单的累计费用、各详单费用之和与房间总费用始终逐分一致。
+ *
+ * 房间在首次被本分片调度时登记（以房间对象上的总费用为初始值）。只由所属分片的调度线程访问，非线程安全。
+ */
+final class RoomLedger {
+
+    // 温度：厘度/度
+    static final int CENTI_PER_DEGREE = 100;
+    // 费用：毫元/元
+    static final long MILLI_PER_YUAN = 1000L;
+    // 尚未写入温度的标记
+    static final int NO_TEMP = Integer.MIN_VALUE;
+
+    // 房间是否已在本账本登记
+    private final boolean[] tracked;
+    // 调度线程推进到的当前温度（厘度）
+    private final int[] tempCenti;
+    // 调度线程最近一次写入房间对象的温度（厘度），用于识别外部修改
+    private final int[] writtenTempCenti;
+    // 最近一次结算（生成详单或入住/退房清零）后的累计费用（毫元，恒为整分）
+    private final long[] settledFeeMilli;
+    // 本次送风会话的费用（毫元）
+    private final long[] sessionFeeMilli;
+
+    RoomLedger(int capacity) {
+        tracked = new boolean[capacity];
+        tempCenti = new int[capacity];
+        writtenTempCenti = new int[capacity];
+        settledFeeMilli = new long[capacity];
+        sessionFeeMilli = new long[capacity];
+        Arrays.fill(tempCenti, NO_TEMP);
+        Arrays.fill(writtenTempCenti, NO_TEMP);
+    }
+
+    boolean isTracked(int ordinal) {
+        return tracked[ordinal];
+    }
+
+    /**
+     * 首次调度房间时登记，已结算费用取 initialTotalFee（按分取整）；已登记的房间不受影响
+     */
+    void track(int ordinal, Double initialTotalFee) {
+        if (tracked[ordinal]) {
+            return;
+        }
+        tracked[ordinal] = true;
+        settledFeeMilli[ordinal] = toCents(toMilli(initialTotalFee == null ? 0.0 : initialTotalFee)) * 10L;
+    }
+
+    int getTempCenti(int ordinal) {
+        return tempCenti[ordinal];
+    }
+
+    void setTempCenti(int ordinal, int centi) {
+        tempCenti[ordinal] = centi;
+    }
+
+    int getWrittenTempCenti(int ordinal) {
+        return writtenTempCenti[ordinal];
+    }
+
+    void setWrittenTempCenti(int ordinal, int centi) {
+        writtenTempCenti[ordinal] = centi;
+    }
+
+    long getSettledFeeMilli(int ordinal) {
+        return settledFeeMilli[ordinal];
+    }
+
+    long getSessionFeeMilli(int ordinal) {
+        return sessionFeeMilli[ordinal];
+    }
+
+    void setSessionFeeMilli(int ordinal, long feeMilli) {
+        sessionFeeMilli[ordinal] = feeMilli;
+    }
+
+    long getTotalFeeMilli(int ordinal) {
+        return settledFeeMilli[ordinal] + sessionFeeMilli[ordinal];
+    }
+
+    /**
+     * 结算本次会话：会话费用按分四舍五入后计入已结算费用，并清零会话费用。
+     *
+     * @return 本次会话计入的费用（分）
+     */
+    long settle(int ordinal) {
+        long cents = toCents(sessionFeeMilli[ordinal]);
+        settledFeeMilli[ordinal] += cents * 10L;
+        sessionFeeMilli[ordinal] = 0L;
+        return cents;
+    }
+
+    /**
+     * 入住/退房时清零费用
+     */
+    void resetFee(int ordinal) {
+        settledFeeMilli[ordinal] = 0L;
+        sessionFeeMilli[ordinal] = 0L;
+    }
+
+    static int toCenti(double degrees) {
+        return (int) Math.round(degrees * CENTI_PER_DEGREE);
+    }
+
+    static double centiToDegrees(int centi) {
+        return centi / (double) CENTI_PER_DEGREE;
+    }
+
+    static long toMilli(double yuan) {
+        return Math.round(yuan * MILLI_PER_YUAN);
+    }
+
+    static double milliToYuan(long milli) {
+        return milli / (double) MILLI_PER_YUAN;
+    }
+
+    // 毫元按分四舍五入（费用非负）
+    static long toCents(long milli) {
+        return Math.floorDiv(milli + 5L, 10L);
+    }
+}
@@ -0,0 +1,73 @@
+package com.bupt.hotel.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 房间序号表：在 {@link RoomInitService#initRooms()} 完成后为每个 roomId 分配稳定的稠密 int 序号（0 ~ size-1）。
+ * 序号按 roomId 的字典序分配，因此按序号比较与原先按 roomId 字符串比较的结果一致。
+ * 调度器的队列、费用账本与 MQTT 主题缓存都以序号为下标使用数组存储，热路径上不再反复哈希 roomId 字符串。
+ *
+ * 构建后只读，可被任意线程并发访问。
+ */
+@Service
+@Slf4j
+public class RoomRegistry {
+
+    private static final class Table {
+        private final Map<String, Integer> ordinals;
+        private final String[] roomIds;
+
+        Table(Map<String, Integer> ordinals, String[] roomIds) {
+            this.ordinals = ordinals;
+            this.roomIds = roomIds;
+        }
+    }
+
+    private volatile Table table = new Table(Map.of(), new String[0]);
+
+    /**
+     * 按 roomId 字典序为所有房间分配序号（在房间初始化完成后调用一次）
+     */
+    public void build(Collection<String> roomIds) {
+        String[] sorted = roomIds.stream().distinct().sorted().toArray(String[]::new);
+        Map<String, Integer> ordinals = new HashMap<>();
+        for (int i = 0; i < sorted.length; i++) {
+            ordinals.put(sorted[i], i);
+        }
+        table = new Table(ordinals, sorted);
+        log.info("Room registry built with {} rooms", sorted.length);
+    }
+
+    public int size() {
+        return table.roomIds.length;
+    }
+
+    /**
+     * 房间序号，未登记的房间返回 -1
+     */
+    public int ordinalOf(String roomId) {
+        Integer ordinal = table.ordinals.get(roomId);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * 房间序号，未登记的房间抛出 NoSuchElementException（与按 roomId 查找房间失败时一致）
+     */
+    public int require(String roomId) {
+        int ordinal = ordinalOf(roomId);
+        if (ordinal < 0) {
+            throw new NoSuchElementException("Unknown room: " + roomId);
+        }
+        return ordinal;
+    }
+
+    public String roomIdOf(int ordinal) {
+        return table.roomIds[ordinal];
+    }
+}
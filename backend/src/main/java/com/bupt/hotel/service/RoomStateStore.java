@@ -0,0 +1,245 @@
+package com.bupt.hotel.service;
+
+import com.bupt.hotel.entity.Room;
+import com.bupt.hotel.repository.RoomRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 房间状态内存表：模拟运行期间温度、费用、状态等字段以内存中的 Room 对象为准。
+ * 内存中的 Room 对象发布后不再修改（copy-on-write）：{@link #update(String, Consumer)} 在最新状态的副本上执行修改，
+ * 再以原子替换的方式发布新对象，同一房间的并发修改依次执行、互不覆盖；读取方法只返回副本。
+ * 修改后房间标记为脏数据，由后台线程按固定间隔批量写回 H2（write-behind），
+ * 避免调度 tick 中每个房间每个区间都产生数据库往返。退房和应用关闭时会同步刷盘。
+ */
+@Service
+@Slf4j
+public class RoomStateStore {
+
+    private static final String UPDATE_SQL = "UPDATE room SET current_temp = ?, target_temp = ?, fan_speed = ?, "
+            + "mode = ?, is_on = ?, initial_temp = ?, initial_temp_cool = ?, initial_temp_heat = ?, "
+            + "price_per_day = ?, status = ?, check_in_time = ?, total_fee = ?, customer_name = ?, "
+            + "id_card = ?, power_cycle_count = ? WHERE id = ?";
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 写回间隔 (ms)
+    @Value("${hotel.room-state.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    // 写回批大小
+    @Value("${hotel.room-state.flush-batch-size:100}")
+    private int flushBatchSize;
+
+    // RoomId -> Room（内存中的权威状态，发布后不再修改）
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+
+    // 按数据库主键顺序排列的房间号，保证列表接口的返回顺序与原先 findAll 一致
+    private volatile List<String> orderedRoomIds = List.of();
+
+    // 待写回的房间
+    private final Set<String> dirtyRooms = ConcurrentHashMap.newKeySet();
+
+    // RoomId -> 状态版本号，每次 update 加一，供条件请求与长轮询判断房间状态是否变化
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    // 房间被修改时的回调（在修改方线程上同步调用，必须快速返回）
+    private final List<Consumer<String>> changeListeners = new CopyOnWriteArrayList<>();
+
+    // 串行化写回。不使用 synchronized：虚拟线程在 synchronized 块内执行 JDBC 会占住载体线程
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "room-state-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("Room state write-behind failed", e);
+            }
+        }, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 从数据库加载全部房间作为内存权威副本（房间初始化完成后调用）
+     */
+    public void load() {
+        List<Room> loaded = roomRepository.findAll();
+        rooms.clear();
+        List<String> roomIds = new ArrayList<>(loaded.size());
+        for (Room room : loaded) {
+            rooms.put(room.getRoomId(), room);
+            versions.computeIfAbsent(room.getRoomId(), id -> new AtomicLong());
+            roomIds.add(room.getRoomId());
+        }
+        orderedRoomIds = List.copyOf(roomIds);
+        log.info("Room state table loaded: {} rooms", rooms.size());
+    }
+
+    /**
+     * 房间当前状态的副本（修改副本不影响内存表，修改房间需调用 {@link #update(String, Consumer)}）
+     */
+    public Optional<Room> findByRoomId(String roomId) {
+        Room room = rooms.get(roomId);
+        return room == null ? Optional.empty() : Optional.of(room.copy());
+    }
+
+    /**
+     * 所有房间当前状态的副本，按数据库主键顺序
+     */
+    public List<Room> findAll() {
+        List<String> roomIds = orderedRoomIds;
+        List<Room> copies = new ArrayList<>(roomIds.size());
+        for (String roomId : roomIds) {
+            Room room = rooms.get(roomId);
+            if (room != null) {
+                copies.add(room.copy());
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * 已发布的房间对象，不复制。仅供同包内只读使用，调用方不得修改
+     */
+    Room current(String roomId) {
+        return rooms.get(roomId);
+    }
+
+    /**
+     * 修改房间：在最新状态的副本上执行 mutation 后原子地发布为新状态，标记为脏数据等待后台批量写回，
+     * 并通知变化监听器。同一房间的修改依次执行，mutation 应只设置字段并尽快返回（不得再修改房间）。
+     *
+     * @return 修改后状态的副本；房间不存在时为空
+     */
+    public Optional<Room> update(String roomId, Consumer<Room> mutation) {
+        Room updated = rooms.computeIfPresent(roomId, (id, current) -> {
+            Room next = current.copy();
+            mutation.accept(next);
+            return next;
+        });
+        if (updated == null) {
+            return Optional.empty();
+        }
+        dirtyRooms.add(roomId);
+        AtomicLong version = versions.get(roomId);
+        if (version != null) {
+            version.incrementAndGet();
+        }
+        for (Consumer<String> listener : changeListeners) {
+            listener.accept(roomId);
+        }
+        return Optional.of(updated.copy());
+    }
+
+    /**
+     * 房间状态版本号（每次 update 加一），未知房间返回 -1
+     */
+    public long versionOf(String roomId) {
+        AtomicLong version = versions.get(roomId);
+        return version == null ? -1L : version.get();
+    }
+
+    public void addChangeListener(Consumer<String> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * 同步写回所有脏数据（退房、关闭时调用，也由后台线程定期调用）
+     */
+    public void flush() {
+        // 在锁内判断：另一线程正在写回时需等待其完成，调用方返回后数据已写入
+        flushLock.lock();
+        try {
+            if (!dirtyRooms.isEmpty()) {
+                flushDirty();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushDirty() {
+        List<Object[]> batch = new ArrayList<>(Math.min(dirtyRooms.size(), flushBatchSize));
+        Iterator<String> it = dirtyRooms.iterator();
+        while (it.hasNext()) {
+            String roomId = it.next();
+            // 先移除脏标记再读取字段：读取之后发生的修改会重新标记，下一轮写回
+            it.remove();
+            Room room = rooms.get(roomId);
+            if (room == null) {
+                continue;
+            }
+            batch.add(toParams(room));
+            if (batch.size() >= flushBatchSize) {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+        log.info("Room state table flushed on shutdown");
+    }
+
+    private Object[] toParams(Room room) {
+        return new Object[] {
+                room.getCurrentTemp(),
+                room.getTargetTemp(),
+                room.getFanSpeed() == null ? null : room.getFanSpeed().name(),
+                room.getMode() == null ? null : room.getMode().name(),
+                room.getIsOn(),
+                room.getInitialTemp(),
+                room.getInitialTempCool(),
+                room.getInitialTempHeat(),
+                room.getPricePerDay(),
+                room.getStatus() == null ? null : room.getStatus().name(),
+                room.getCheckInTime() == null ? null : Timestamp.valueOf(room.getCheckInTime()),
+                room.getTotalFee(),
+                room.getCustomerName(),
+                room.getIdCard(),
+                room.getPowerCycleCount(),
+                room.getId()
+        };
+    }
+}
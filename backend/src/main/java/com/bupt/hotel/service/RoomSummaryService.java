@@ -0,0 +1,216 @@
+package com.bupt.hotel.service;
+
+import com.bupt.hotel.entity.FanSpeed;
+import com.bupt.hotel.entity.Mode;
+import com.bupt.hotel.entity.Room;
+import com.bupt.hotel.entity.RoomStatus;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 房间列表的读模型：每个房间一条精简摘要（状态、温度、风速、费用、入住信息），按房间序号存放在内存中。
+ * 房间每次被修改（{@link RoomStateStore#update}，调度线程与各接口的写路径都会调用）时在修改方线程上重建该房间的摘要，
+ * 读接口只读取摘要并把温度与费用按调度轨迹插值到当前时刻，不复制房间实体、不访问数据库、不产生任何写入。
+ * 楼层过滤与分页在摘要数组上完成。
+ */
+@Service
+public class RoomSummaryService {
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    @Autowired
+    private RoomStateStore roomStateStore;
+
+    @Autowired
+    private RoomRegistry roomRegistry;
+
+    @Autowired
+    @Lazy
+    private SchedulerService schedulerService;
+
+    @Autowired
+    private TimeService timeService;
+
+    /**
+     * 房间摘要。存放在读模型中的实例发布后不再修改，读接口返回的是填充了当前温度与费用的副本
+     */
+    @Data
+    public static class RoomSummary {
+        private String roomId;
+        private String floor;
+        private RoomStatus status;
+        private Boolean isOn;
+        private Mode mode;
+        private Double currentTemp;
+        private Double targetTemp;
+        private FanSpeed fanSpeed;
+        private Double totalFee;
+        private Double currentSessionFee;
+        private boolean occupied;
+        private String customerName;
+        private LocalDateTime checkInTime;
+        private Double pricePerDay;
+
+        RoomSummary copy() {
+            RoomSummary copy = new RoomSummary();
+            copy.roomId = roomId;
+            copy.floor = floor;
+            copy.status = status;
+            copy.isOn = isOn;
+            copy.mode = mode;
+            copy.currentTemp = currentTemp;
+            copy.targetTemp = targetTemp;
+            copy.fanSpeed = fanSpeed;
+            copy.totalFee = totalFee;
+            copy.currentSessionFee = currentSessionFee;
+            copy.occupied = occupied;
+            copy.customerName = customerName;
+            copy.checkInTime = checkInTime;
+            copy.pricePerDay = pricePerDay;
+            return copy;
+        }
+    }
+
+    @Data
+    public static class RoomSummaryPage {
+        private int total; // 过滤后的房间总数
+        private int page;
+        private int size;
+        private List<RoomSummary> items;
+    }
+
+    // 房间序号 -> 摘要，首次读取时从内存状态表构建，之后由写路径更新
+    private volatile AtomicReferenceArray<RoomSummary> summaries = new AtomicReferenceArray<>(0);
+
+    @PostConstruct
+    public void init() {
+        roomStateStore.addChangeListener(this::refresh);
+    }
+
+    /**
+     * 按楼层过滤并分页的房间摘要（房间号升序）
+     *
+     * @param floor 楼层号（房间号去掉后两位），为空表示全部楼层
+     */
+    public RoomSummaryPage page(String floor, int page, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int from = Math.max(0, page) * pageSize;
+        String floorName = floor == null || floor.isBlank() ? null : "floor-" + floor.trim();
+        double now = timeService.getLogicSeconds();
+        List<RoomSummary> items = new ArrayList<>(Math.min(pageSize, roomRegistry.size()));
+        int total = 0;
+        for (int ordinal = 0; ordinal < roomRegistry.size(); ordinal++) {
+            RoomSummary summary = summaryOf(ordinal);
+            if (summary == null || (floorName != null && !floorName.equals(summary.getFloor()))) {
+                continue;
+            }
+            if (total >= from && items.size() < pageSize) {
+                items.add(current(summary, now));
+            }
+            total++;
+        }
+        RoomSummaryPage result = new RoomSummaryPage();
+        result.setTotal(total);
+        result.setPage(Math.max(0, page));
+        result.setSize(pageSize);
+        result.setItems(items);
+        return result;
+    }
+
+    /**
+     * 全部房间的摘要（房间号升序）
+     */
+    public List<RoomSummary> all() {
+        double now = timeService.getLogicSeconds();
+        List<RoomSummary> items = new ArrayList<>(roomRegistry.size());
+        for (int ordinal = 0; ordinal < roomRegistry.size(); ordinal++) {
+            RoomSummary summary = summaryOf(ordinal);
+            if (summary != null) {
+                items.add(current(summary, now));
+            }
+        }
+        return items;
+    }
+
+    // 在修改方线程上重建房间摘要
+    private void refresh(String roomId) {
+        int ordinal = roomRegistry.ordinalOf(roomId);
+        if (ordinal < 0) {
+            return;
+        }
+        // 已发布的房间对象不会再被修改，直接读取而不复制
+        Room room = roomStateStore.current(roomId);
+        if (room != null) {
+            table().set(ordinal, summarize(room));
+        }
+    }
+
+    private RoomSummary summaryOf(int ordinal) {
+        AtomicReferenceArray<RoomSummary> table = table();
+        RoomSummary summary = table.get(ordinal);
+        if (summary == null) {
+            Room room = roomStateStore.current(roomRegistry.roomIdOf(ordinal));
+            if (room == null) {
+                return null;
+            }
+            // 尚未被修改过的房间：首次读取时构建；若写路径已先发布则以其为准
+            table.compareAndSet(ordinal, null, summarize(room));
+            summary = table.get(ordinal);
+        }
+        return summary;
+    }
+
+    private AtomicReferenceArray<RoomSummary> table() {
+        AtomicReferenceArray<RoomSummary> table = summaries;
+        if (table.length() != roomRegistry.size()) {
+            synchronized (this) {
+                if (summaries.length() != roomRegistry.size()) {
+                    summaries = new AtomicReferenceArray<>(roomRegistry.size());
+                }
+                table = summaries;
+            }
+        }
+        return table;
+    }
+
+    private static RoomSummary summarize(Room room) {
+        RoomSummary summary = new RoomSummary();
+        summary.setRoomId(room.getRoomId());
+        summary.setFloor(SchedulerService.floorOf(room.getRoomId()));
+        summary.setStatus(room.getStatus());
+        summary.setIsOn(room.getIsOn());
+        summary.setMode(room.getMode());
+        summary.setCurrentTemp(room.getCurrentTemp());
+        summary.setTargetTemp(room.getTargetTemp());
+        summary.setFanSpeed(room.getFanSpeed());
+        summary.setTotalFee(room.getTotalFee());
+        summary.setOccupied(room.getCustomerName() != null && !room.getCustomerName().isBlank());
+        summary.setCustomerName(room.getCustomerName());
+        summary.setCheckInTime(room.getCheckInTime());
+        summary.setPricePerDay(room.getPricePerDay());
+        return summary;
+    }
+
+    // 副本：温度按调度轨迹插值到当前时刻；送风中的房间使用实时的总费用与本次会话费用，否则会话费用为 0
+    private RoomSummary current(RoomSummary summary, double now) {
+        RoomSummary copy = summary.copy();
+        copy.setCurrentSessionFee(0.0);
+        TemperatureTrajectory trajectory = schedulerService.trajectoryOf(summary.getRoomId());
+        if (trajectory != null) {
+            copy.setCurrentTemp(trajectory.tempAt(now));
+            if (trajectory.isServing()) {
+                copy.setTotalFee(trajectory.totalFeeAt(now));
+                copy.setCurrentSessionFee(trajectory.sessionFeeAt(now));
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,1464 @@
+package com.bupt.hotel.service;
+
+import com.bupt.hotel.entity.BillingDetail;
+import com.bupt.hotel.entity.FanSpeed;
+import com.bupt.hotel.entity.Mode;
+import com.bupt.hotel.entity.Room;
+import com.bupt.hotel.entity.RoomStatus;
+import com.bupt.hotel.service.SchedulerService.RequestInfo;
+import com.bupt.hotel.service.SchedulerService.ServiceUnit;
+import com.bupt.hotel.service.SchedulerService.WaitingInfo;
+import com.bupt.hotel.util.HashedTimingWheel;
+import com.bupt.hotel.util.IndexedHeap;
+import com.bupt.hotel.util.OrdinalMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 调度分片：负责一个区域（整栋楼、一个楼层或一组配置的房间）的服务队列、等待队列与温控模拟。
+ * 每个分片拥有独立的容量、命令队列与调度线程，不同分片之间的命令互不争用。
+ * 分片内的容量由一台或多台中央空调机组 {@link AcUnit} 提供：房间优先使用主机组，
+ * 主机组满载时可以占用其他连通机组的空闲槽位（work-stealing），机组出现空位时从连通的等待者中拉取。
+ * 由 {@link SchedulerService} 按 roomId 路由创建，不是 Spring Bean。
+ * 分片内的队列、轨迹与费用账本均以 {@link RoomRegistry} 分配的房间序号为下标存放在数组中。
+ *
+ * 模拟采用事件驱动（next-event）方式：送风房间到达目标温度、IDLE 房间回温到重启阈值的时刻
+ * 都由速率解析计算后放入按时间排序的事件队列；等待者的时间片耗尽与优先级提升挂在哈希时间轮上，
+ * 时间轮最早的到期时间作为一个事件参与排序。调度线程只在下一个事件到期或收到命令时醒来。
+ * 事件之间房间温度与费用沿 {@link TemperatureTrajectory} 分段线性变化，读取时按当前逻辑时间插值。
+ * 关机、等待与 IDLE 房间的回温同样是闭式轨迹，只在房间被读取、计费或状态变化时求值，
+ * 已回到初始温度的关机房间不产生任何周期性开销。
+ */
+@Slf4j
+class SchedulerShard {
+
+    private final String name;
+
+    private final RoomStateStore roomStateStore;
+    private final RoomRegistry registry;
+    private final BillingDetailWriter billingDetailWriter;
+    private final MqttService mqttService;
+    private final TimeService timeService;
+
+    // 本分片的中央空调机组（按配置顺序）
+    private final List<AcUnit> units = new ArrayList<>();
+    private final Map<String, AcUnit> unitByName = new HashMap<>();
+
+    // RoomId -> 可接入的机组名称（第一个为主机组），返回空列表表示可接入全部机组
+    private final Function<String, List<String>> affinity;
+
+    // 房间序号 -> 可接入的机组（主机组在前），首次使用时由 affinity 解析并缓存
+    private final OrdinalMap<List<AcUnit>> plumbing;
+
+    // 本分片已推进的逻辑秒数（用于计算机组平均利用率）
+    private volatile double simulatedSeconds = 0.0;
+
+    // 逻辑时间刻度 (ms)
+    private final long timeScaleMs;
+
+    // 时间片长度（逻辑秒）：2分钟 = 120秒
+    private static final long TIME_SLICE_LOGIC_SECONDS = 120L;
+
+    // 回温速率（度/逻辑秒）：0.5度/min
+    private static final double RECOVERY_RATE_PER_SEC = 0.5 / 60.0;
+
+    // 事件 key：周期性巡检、等待者定时器（时间轮）、房间温度轨迹事件（TARGET_REACHED / REWARM）
+    private static final String SWEEP_KEY = "sweep";
+    private static final String TIMERS_KEY = "timers";
+    private static final String ROOM_KEY_PREFIX = "room:";
+
+    // 等待者定时器 key：时间片耗尽、优先级提升
+    private static final String SLICE_TIMER_PREFIX = "slice:";
+    private static final String BOOST_TIMER_PREFIX = "boost:";
+
+    // 按房间序号预先拼好的事件与定时器 key，避免每次安排事件时拼接字符串
+    private final String[] roomEventKeys;
+    private final String[] sliceTimerKeys;
+    private final String[] boostTimerKeys;
+
+    // 时间轮：256 个槽，每槽 1 逻辑秒，一圈覆盖两个以上时间片
+    private static final int TIMER_WHEEL_SIZE = 256;
+    private static final double TIMER_TICK_SECONDS = 1.0;
+
+    // 防止在执行强制抢占检查时递归触发多次检查的守护标志
+    private boolean enforcingPreemptions = false;
+    // 批量命令执行期间推迟强制抢占检查，批次结束后统一检查一次
+    private boolean batching = false;
+
+    // 单写者命令循环：所有修改调度状态的操作都封装为命令，
+    // 由本分片唯一的 scheduler-loop 线程从无锁队列中按提交顺序取出执行，调用方不再争用同一把锁
+    private final Queue<Command> commandQueue = new ConcurrentLinkedQueue<>();
+    private Thread loopThread;
+    private volatile boolean running;
+
+    // 事件队列：堆顶为最早到期的事件；同一房间同一类事件只保留一个（按 key 替换）
+    private final IndexedHeap<String, SimEvent> events = new IndexedHeap<>(EVENT_ORDER, SimEvent::getKey);
+
+    // 调度状态已推进到的逻辑时间（秒）
+    private double simTime;
+    // 本分片创建时的逻辑时间
+    private final double createdTime;
+
+    // 房间序号 -> 当前温度/费用轨迹（送风中、IDLE 回温中、关机或等待中尚未回到初始温度的房间），供读取方插值
+    private final OrdinalMap<TemperatureTrajectory> trajectories;
+
+    // 定点数账本：按房间序号存放温度（厘度）与费用（毫元），推进时只更新这里，不产生装箱
+    private final RoomLedger ledger;
+
+    // 等待者的时间片耗尽与优先级提升定时器（按逻辑时间散列），只在到期时触发，不再逐秒递减倒计时
+    private final HashedTimingWheel<String, Runnable> waiterTimers;
+
+    // 内存中维护的队列（均以房间序号为下标）
+    // 服务队列: 房间序号 -> ServiceUnit
+    private final OrdinalMap<ServiceUnit> serviceQueue;
+
+    // 等待队列: 房间序号 -> WaitingInfo
+    private final OrdinalMap<WaitingInfo> waitingQueue;
+
+    // 辅助结构: 记录每个房间当前的请求信息 (用于恢复)
+    private final OrdinalMap<RequestInfo> roomRequests;
+
+    // 全局的调度队列快照（各分片共享），以及本批处理中队列状态发生变化、尚未发布的房间
+    private final AtomicReference<SchedulerSnapshot> snapshot;
+    private final boolean[] changed;
+    private final int[] changedOrdinals;
+    private int changedCount;
+
+    /**
+     * 中央空调机组：拥有固定数量的送风槽位，并各自维护服务对象与可接入等待者的堆，
+     * 因此选择受害者、分配空位时只需查看相关机组的堆顶，无需全局扫描。
+     */
+    private static class AcUnit {
+        private final String name;
+        private final int slots;
+        // 占用本机组槽位的服务对象（房间序号 -> 服务对象）
+        private final OrdinalMap<ServiceUnit> serving;
+        // 受害者堆：堆顶为风速最低、同风速下服务时间最长的服务对象（最先被抢占）
+        private final IndexedHeap<String, ServiceUnit> victimHeap = new IndexedHeap<>(VICTIM_ORDER,
+                ServiceUnit::getRoomId);
+        // 分配堆：可接入本机组的等待者，堆顶为空位出现时最先获得服务的等待者
+        private final IndexedHeap<String, WaitingInfo> allocationHeap = new IndexedHeap<>(ALLOCATION_ORDER,
+                WaitingInfo::getRoomId);
+        // 抢占堆：可接入本机组的等待者，堆顶为有效优先级最高、最有资格发起抢占的等待者
+        private final IndexedHeap<String, WaitingInfo> preemptorHeap = new IndexedHeap<>(PREEMPTOR_ORDER,
+                WaitingInfo::getRoomId);
+        // 可接入本机组的等待者数量（供管理接口读取）
+        private volatile int waiting;
+        // 非主机组房间占用本机组空闲槽位的次数
+        private volatile long stolenSlots;
+        // 累计占用的槽位·逻辑秒
+        private volatile double busySlotSeconds;
+
+        AcUnit(String name, int slots, int rooms) {
+            this.name = name;
+            this.slots = slots;
+            this.serving = new OrdinalMap<>(rooms);
+        }
+
+        boolean hasFreeSlot() {
+            return serving.size() < slots;
+        }
+    }
+
+    private enum EventType {
+        // 送风房间到达目标温度
+        TARGET_REACHED,
+        // IDLE 房间回温到重启阈值（目标温度 ±1 度）
+        REWARM,
+        // 时间轮中最早的等待者定时器到期
+        TIMERS,
+        // 周期性巡检：安全检查与送风房间的实时状态推送（仅在服务/等待队列非空时安排）
+        SWEEP
+    }
+
+    private static class SimEvent {
+        private final String key;
+        private final EventType type;
+        private final String roomId;
+        private final double time; // 到期的逻辑时间（秒）
+
+        SimEvent(String key, EventType type, String roomId, double time) {
+            this.key = key;
+            this.type = type;
+            this.roomId = roomId;
+            this.time = time;
+        }
+
+        String getKey() {
+            return key;
+        }
+    }
+
+    // 事件按到期时间升序，同时到期时按 key 排序保证处理顺序确定
+    private static final Comparator<SimEvent> EVENT_ORDER = Comparator.comparingDouble((SimEvent e) -> e.time)
+            .thenComparing(SimEvent::getKey);
+
+    private static class Command {
+        private final Runnable action;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        Command(Runnable action) {
+            this.action = action;
+        }
+    }
+
+    SchedulerShard(String name, RoomStateStore roomStateStore, RoomRegistry registry,
+            BillingDetailWriter billingDetailWriter, MqttService mqttService, TimeService timeService,
+            Map<String, Integer> unitSlots, Function<String, List<String>> affinity, long timeScaleMs,
+            AtomicReference<SchedulerSnapshot> snapshot) {
+        this.name = name;
+        this.roomStateStore = roomStateStore;
+        this.registry = registry;
+        this.billingDetailWriter = billingDetailWriter;
+        this.mqttService = mqttService;
+        this.timeService = timeService;
+        int rooms = registry.size();
+        this.plumbing = new OrdinalMap<>(rooms);
+        this.trajectories = new OrdinalMap<>(rooms);
+        this.ledger = new RoomLedger(rooms);
+        this.serviceQueue = new OrdinalMap<>(rooms);
+        this.waitingQueue = new OrdinalMap<>(rooms);
+        this.roomRequests = new OrdinalMap<>(rooms);
+        this.snapshot = snapshot;
+        this.changed = new boolean[rooms];
+        this.changedOrdinals = new int[rooms];
+        this.roomEventKeys = new String[rooms];
+        this.sliceTimerKeys = new String[rooms];
+        this.boostTimerKeys = new String[rooms];
+        for (int ordinal = 0; ordinal < rooms; ordinal++) {
+            String roomId = registry.roomIdOf(ordinal);
+            roomEventKeys[ordinal] = ROOM_KEY_PREFIX + roomId;
+            sliceTimerKeys[ordinal] = SLICE_TIMER_PREFIX + roomId;
+            boostTimerKeys[ordinal] = BOOST_TIMER_PREFIX + roomId;
+        }
+        for (Map.Entry<String, Integer> e : unitSlots.entrySet()) {
+            AcUnit unit = new AcUnit(e.getKey(), e.getValue(), rooms);
+            units.add(unit);
+            unitByName.put(unit.name, unit);
+        }
+        this.affinity = affinity;
+        this.timeScaleMs = timeScaleMs;
+        this.simTime = timeService.getLogicSeconds();
+        this.createdTime = simTime;
+        this.waiterTimers = new HashedTimingWheel<>(TIMER_WHEEL_SIZE, TIMER_TICK_SECONDS, simTime);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void startLoop() {
+        running = true;
+        loopThread = new Thread(this::runLoop, "scheduler-loop-" + name);
+        loopThread.setDaemon(true);
+        loopThread.start();
+    }
+
+    void stopLoop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(loopThread);
+        loopThread.join(5000);
+    }
+
+    private void runLoop() {
+        while (running) {
+            Command cmd = commandQueue.poll();
+            if (cmd != null) {
+                try {
+                    // 先处理已到期的事件并把状态推进到当前时刻，再执行命令
+                    catchUp();
+                    cmd.action.run();
+                    // 先发布快照再完成命令，调用方返回后读接口即可看到本次变化
+                    publishSnapshot();
+                    cmd.result.complete(null);
+                } catch (Throwable t) {
+                    log.error("Scheduler command failed", t);
+                    publishSnapshot();
+                    cmd.result.completeExceptionally(t);
+                }
+                continue;
+            }
+            SimEvent next = events.peek();
+            if (next == null) {
+                // 没有待处理的事件时挂起，生产者提交命令后 unpark 唤醒
+                LockSupport.park(this);
+                continue;
+            }
+            double now = timeService.getLogicSeconds();
+            if (next.time > now) {
+                // 挂起到下一个事件到期，期间提交的命令会提前唤醒
+                LockSupport.parkNanos(this, timeService.logicSecondsToRealNanos(next.time - now));
+                continue;
+            }
+            try {
+                catchUp();
+            } catch (Throwable t) {
+                log.error("Scheduler event failed", t);
+            }
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * 提交一个调度命令，返回的 Future 在命令执行完成后完成。
+     * 若当前已在调度线程上（命令内部再次提交），直接执行以避免自我等待。
+     */
+    CompletableFuture<Void> submit(Runnable action) {
+        if (Thread.currentThread() == loopThread) {
+            action.run();
+            return CompletableFuture.completedFuture(null);
+        }
+        Command cmd = new Command(action);
+        commandQueue.offer(cmd);
+        LockSupport.unpark(loopThread);
+        return cmd.result;
+    }
+
+    /**
+     * 提交一批操作，在同一个命令中按顺序执行（只推进一次时间、只发布一次快照），
+     * 操作期间不做强制抢占检查，全部执行完后统一检查一次。
+     * 单个操作抛出的异常不影响后续操作，按位置记录在返回的数组中（成功为 null）。
+     */
+    CompletableFuture<Throwable[]> submitBatch(List<Runnable> actions) {
+        Throwable[] failures = new Throwable[actions.size()];
+        return submit(() -> applyBatch(actions, failures)).thenApply(v -> failures);
+    }
+
+    private void applyBatch(List<Runnable> actions, Throwable[] failures) {
+        boolean nested = batching;
+        batching = true;
+        try {
+            for (int i = 0; i < actions.size(); i++) {
+                try {
+                    actions.get(i).run();
+                } catch (RuntimeException e) {
+                    failures[i] = e;
+                }
+            }
+        } finally {
+            batching = nested;
+        }
+        if (!nested) {
+            enforceNoMissedPreemptions();
+        }
+    }
+
+    /**
+     * 等待命令完成，并将命令中抛出的运行时异常原样抛给调用方（例如参数校验失败的 IllegalArgumentException）
+     */
+    private static void await(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // 服务对象被抢占的顺序: 风速升序 (LOW < MIDDLE < HIGH)，同风速服务时间长的排前面，最后按房间号升序
+    static final Comparator<ServiceUnit> VICTIM_ORDER = (u1, u2) -> {
+        int p1 = getPriority(u1.getFanSpeed());
+        int p2 = getPriority(u2.getFanSpeed());
+        if (p1 != p2)
+            return p1 - p2;
+        int cmp = Long.compare(u2.getServedDurationSeconds(), u1.getServedDurationSeconds());
+        if (cmp != 0)
+            return cmp;
+        return Integer.compare(u1.getRoomOrdinal(), u2.getRoomOrdinal());
+    };
+
+    // 按基础风速优先（不可被等待提升跨越）；在相同风速下，
+    // 如果累计等待时间超过时间片则在同风速内提升优先级。最终以累计等待时间和 roomId 做稳定排序。
+    static final Comparator<WaitingInfo> ALLOCATION_ORDER = (w1, w2) -> {
+        // 先比较基础风速优先级（HIGH > MIDDLE > LOW）——这是绝对性的
+        int base1 = getPriority(w1.getFanSpeed());
+        int base2 = getPriority(w2.getFanSpeed());
+        if (base1 != base2) {
+            return base2 - base1; // 降序：风速高的在前
+        }
+
+        // 到此说明风速相同：在相同风速内，等待超过时间片的会获得提升
+        boolean boosted1 = w1.isPriorityBoosted();
+        boolean boosted2 = w2.isPriorityBoosted();
+        if (boosted1 != boosted2) {
+            return boosted2 ? -1 : 1; // boosted 的排在前面
+        }
+
+        // 同风速、同提升状态：按累计等待时间降序（即进入等待队列的时间升序）
+        int waitedCmp = Double.compare(w1.getEnqueuedAt(), w2.getEnqueuedAt());
+        if (waitedCmp != 0)
+            return waitedCmp;
+
+        // 最后以房间号升序作为稳定的 tie-break（序号按房间号字典序分配，比较结果相同）
+        return Integer.compare(w1.getRoomOrdinal(), w2.getRoomOrdinal());
+    };
+
+    // 有效优先级（基础风速优先级 + 超过时间片的提升）降序，然后累计等待时间降序，最后房间号升序
+    static final Comparator<WaitingInfo> PREEMPTOR_ORDER = (w1, w2) -> {
+        int p1 = getEffectivePriority(w1);
+        int p2 = getEffectivePriority(w2);
+        if (p1 != p2)
+            return p2 - p1; // 降序
+        int waitedCmp = Double.compare(w1.getEnqueuedAt(), w2.getEnqueuedAt());
+        if (waitedCmp != 0)
+            return waitedCmp;
+        return Integer.compare(w1.getRoomOrdinal(), w2.getRoomOrdinal());
+    };
+
+    /**
+     * 接收送风请求 (开机、调风、回温触发)，阻塞直到调度线程处理完成
+     */
+    void requestSupply(String roomId, Mode mode, Double targetTemp, FanSpeed fanSpeed) {
+        await(requestSupplyAsync(roomId, mode, targetTemp, fanSpeed));
+    }
+
+    CompletableFuture<Void> requestSupplyAsync(String roomId, Mode mode, Double targetTemp,
+            FanSpeed fanSpeed) {
+        return submit(() -> applyRequestSupply(roomId, mode, targetTemp, fanSpeed));
+    }
+
+    private void applyRequestSupply(String roomId, Mode mode, Double targetTemp, FanSpeed fanSpeed) {
+        log.info("Request Supply: Room={}, Mode={}, Target={}, Fan={}", roomId, mode, targetTemp, fanSpeed);
+
+        // 参数校验
+        if (mode == Mode.COOL) {
+            if (targetTemp < 18 || targetTemp > 28) {
+                throw new IllegalArgumentException("Cooling target temp must be between 18 and 28");
+            }
+        } else if (mode == Mode.HEAT) {
+            if (targetTemp < 18 || targetTemp > 25) {
+                throw new IllegalArgumentException("Heating target temp must be between 18 and 25");
+            }
+        }
+
+        int ordinal = registry.require(roomId);
+
+        // 更新或保存请求信息
+        RequestInfo req = new RequestInfo();
+        req.setRoomId(roomId);
+        req.setMode(mode);
+        req.setTargetTemp(targetTemp);
+        req.setFanSpeed(fanSpeed);
+        roomRequests.put(ordinal, req);
+
+        Room room = roomStateStore.current(roomId);
+        if (room == null) {
+            throw new NoSuchElementException("Room not found: " + roomId);
+        }
+
+        // 如果模式改变且房间处于关机状态，重置当前温度为对应模式的初始温度
+        Mode oldMode = room.getMode();
+        Double newInitialTemp = null;
+        if (oldMode != mode && (room.getIsOn() == null || !room.getIsOn())) {
+            if (mode == Mode.COOL) {
+                newInitialTemp = room.getInitialTempCool() != null ? room.getInitialTempCool() : room.getInitialTemp();
+            } else {
+                newInitialTemp = room.getInitialTempHeat() != null ? room.getInitialTempHeat() : room.getInitialTemp();
+            }
+            // 回温轨迹对应旧模式的初始温度，随温度重置一起作废
+            trajectories.remove(ordinal);
+            log.info("Mode changed from {} to {} for room {}, resetting current temp to {}", oldMode, mode, roomId,
+                    newInitialTemp);
+        }
+
+        // 不在任何队列中的房间是新请求：暂时设为 WAITING，由 dispatch 决定
+        boolean newRequest = !serviceQueue.containsKey(ordinal) && !waitingQueue.containsKey(ordinal);
+        Double resetTemp = newInitialTemp;
+        roomStateStore.update(roomId, r -> {
+            if (resetTemp != null) {
+                r.setCurrentTemp(resetTemp);
+            }
+            r.setMode(mode);
+            r.setTargetTemp(targetTemp);
+            r.setFanSpeed(fanSpeed);
+            if (newRequest) {
+                r.setStatus(RoomStatus.WAITING);
+            }
+        });
+
+        // 如果已经在服务队列，且风速改变 -> 视为新请求，重新调度
+        if (serviceQueue.containsKey(ordinal)) {
+            ServiceUnit unit = serviceQueue.get(ordinal);
+            if (unit.getFanSpeed() != fanSpeed) {
+                // 风速改变：直接在服务队列中更新，并结算之前的费用
+                log.info("Fan speed changed for room {} in service queue, updating in place", roomId);
+
+                // 1. 结算旧风速段的详单
+                createBillingDetail(unit);
+
+                // 2. 更新服务单元信息（重置开始时间和费用，保留在服务队列）
+                unit.setFanSpeed(fanSpeed);
+                unit.setStartTime(timeService.getCurrentTime());
+                unit.setServedDurationSeconds(0);
+                unit.setCurrentFee(0.0);
+                unitOf(unit).victimHeap.update(roomId);
+                reanchor(roomId);
+
+                // 3. 触发抢占检查：新风速可能导致优先级变化，需要检查是否应被等待队列抢占
+                enforceNoMissedPreemptions();
+            } else {
+                // 风速没变，仅更新目标温度等，不影响调度（但到达目标温度的时刻需要重新计算）
+                reanchor(roomId);
+            }
+        } else if (waitingQueue.containsKey(ordinal)) {
+            // 如果在等待队列，且风速改变 -> 视为新请求，重新调度
+            WaitingInfo info = waitingQueue.get(ordinal);
+            if (info.getFanSpeed() != fanSpeed) {
+                // 风速改变：从等待队列移除，重新请求（重置等待时间）
+                log.info("Fan speed changed for room {} in waiting queue, re-dispatching", roomId);
+                removeWaiting(roomId);
+                dispatch(roomId, fanSpeed);
+            }
+            // 风速没变，仅更新目标温度等，不影响调度
+        } else {
+            // 新请求
+            dispatch(roomId, fanSpeed);
+        }
+    }
+
+    /**
+     * 停止送风 (关机、达到目标温度)
+     * 
+     * @param isPowerOff true=关机(清空请求), false=暂停(保留请求用于回温)
+     */
+    void stopSupply(String roomId, boolean isPowerOff) {
+        await(stopSupplyAsync(roomId, isPowerOff));
+    }
+
+    CompletableFuture<Void> stopSupplyAsync(String roomId, boolean isPowerOff) {
+        return submit(() -> applyStopSupply(roomId, isPowerOff));
+    }
+
+    private void applyStopSupply(String roomId, boolean isPowerOff) {
+        log.info("Stop Supply: Room={}, PowerOff={}", roomId, isPowerOff);
+
+        int ordinal = registry.require(roomId);
+
+        // 如果在服务中，结束服务并生成详单
+        if (serviceQueue.containsKey(ordinal)) {
+            stopService(roomId, isPowerOff);
+        }
+
+        // 如果在等待队列中，移出等待队列
+        if (waitingQueue.containsKey(ordinal)) {
+            removeWaiting(roomId);
+        }
+
+        if (isPowerOff) {
+            // 关机：清空请求，更新状态为 SHUTDOWN
+            roomRequests.remove(ordinal);
+            boolean updated = roomStateStore.update(roomId, r -> {
+                r.setStatus(RoomStatus.SHUTDOWN);
+                r.setIsOn(false);
+            }).isPresent();
+            if (updated) {
+                reanchor(roomId);
+                mqttService.publishStatus(roomId);
+            }
+        } else {
+            // 仅仅是达到温度暂停，状态改为 IDLE
+            updateRoomStatus(roomId, RoomStatus.IDLE);
+        }
+    }
+
+    /**
+     * 核心调度逻辑
+     */
+    private void dispatch(String newRoomId, FanSpeed newFanSpeed) {
+        List<AcUnit> plumbed = plumbingOf(registry.require(newRoomId));
+
+        // 情形 1: 可接入的机组有空闲槽位（主机组优先，其次占用其他机组的空闲槽位）
+        for (AcUnit unit : plumbed) {
+            if (unit.hasFreeSlot()) {
+                startService(newRoomId, newFanSpeed, unit);
+                return;
+            }
+        }
+
+        // 情形 2: 可接入的机组均已满，需比较优先级
+        // 优先级: HIGH > MIDDLE > LOW
+        // 比较 newFanSpeed 与可接入机组中的最低优先级
+
+        ServiceUnit candidateToPreempt = lowestVictim(plumbed); // 优先级最低且服务时间最长的
+
+        int newPriority = getPriority(newFanSpeed);
+        int candidatePriority = getPriority(candidateToPreempt.getFanSpeed());
+
+        if (candidatePriority < newPriority) {
+            // 抢占
+            log.info("Preempt: Room {} (Speed {}) preempts Room {} (Speed {})",
+                    newRoomId, newFanSpeed, candidateToPreempt.getRoomId(), candidateToPreempt.getFanSpeed());
+
+            preempt(candidateToPreempt.getRoomId(), newRoomId, newFanSpeed);
+        } else if (candidatePriority == newPriority) {
+            // 同级，时间片轮转逻辑
+            // 新请求进入等待队列，分配时间片（120秒逻辑时间）
+            addToWaitingQueue(newRoomId, newFanSpeed, TIME_SLICE_LOGIC_SECONDS);
+        } else {
+            // 优先级更低，进入等待队列（120秒逻辑时间）
+            addToWaitingQueue(newRoomId, newFanSpeed, TIME_SLICE_LOGIC_SECONDS);
+        }
+    }
+
+    private void startService(String roomId, FanSpeed fanSpeed, AcUnit acUnit) {
+        // 容量保护：如果机组已经满，则把请求放回等待队列（以防并发导致超出容量）
+        if (!acUnit.hasFreeSlot()) {
+            addToWaitingQueue(roomId, fanSpeed, TIME_SLICE_LOGIC_SECONDS);
+            log.warn("StartService rejected (capacity full). Room {} moved to waiting", roomId);
+            return;
+        }
+
+        // 从等待队列移除
+        removeWaiting(roomId);
+
+        int ordinal = registry.require(roomId);
+        ServiceUnit unit = new ServiceUnit();
+        unit.setRoomId(roomId);
+        unit.setRoomOrdinal(ordinal);
+        unit.setStartTime(timeService.getCurrentTime());
+        unit.setFanSpeed(fanSpeed);
+        unit.setServedDurationSeconds(0);
+        unit.setCurrentFee(0.0);
+        unit.setAcUnit(acUnit.name);
+
+        serviceQueue.put(ordinal, unit);
+        touch(ordinal);
+        acUnit.serving.put(ordinal, unit);
+        ensureSweep();
+        acUnit.victimHeap.offer(unit);
+        if (plumbingOf(ordinal).get(0) != acUnit) {
+            acUnit.stolenSlots++;
+            log.info("Room {} takes an idle slot of unit {} (home unit busy)", roomId, acUnit.name);
+        }
+
+        updateRoomStatus(roomId, RoomStatus.SERVING);
+        log.info("Start Service: Room={}, Unit={}", roomId, acUnit.name);
+    }
+
+    private void stopService(String roomId, boolean isPowerOff) {
+        ServiceUnit unit = removeService(roomId);
+        if (unit == null)
+            return;
+
+        // 生成详单
+        createBillingDetail(unit);
+
+        RoomStatus nextStatus = isPowerOff ? RoomStatus.SHUTDOWN : RoomStatus.IDLE;
+        updateRoomStatus(roomId, nextStatus);
+
+        // 服务对象释放后，由释放槽位的机组从可接入的等待者中选择下一个合适的房间
+        tryAllocateFromWaitingQueue(unitOf(unit));
+    }
+
+    /**
+     * 停止服务但不触发等待队列分配（用于风速改变重新调度的场景）
+     */
+    private void stopServiceWithoutAllocation(String roomId) {
+        ServiceUnit unit = removeService(roomId);
+        if (unit == null)
+            return;
+
+        // 生成详单
+        createBillingDetail(unit);
+
+        RoomStatus nextStatus = RoomStatus.IDLE;
+        updateRoomStatus(roomId, nextStatus);
+        // 注意：不调用 tryAllocateFromWaitingQueue()
+    }
+
+    /**
+     * 尝试从可接入指定机组的等待者中分配下一个房间到该机组的空闲槽位
+     * 规则：优先级高的优先，同优先级选择累计等待时间最长的
+     */
+    private void tryAllocateFromWaitingQueue(AcUnit acUnit) {
+        if (!acUnit.hasFreeSlot()) {
+            return;
+        }
+
+        // 排序规则见 ALLOCATION_ORDER
+        WaitingInfo next = acUnit.allocationHeap.peek();
+        if (next != null) {
+            log.info("Allocating from waiting queue: Room {} (priority {}, totalWaited={}s) -> unit {}",
+                    next.getRoomId(), getPriority(next.getFanSpeed()), waitedSeconds(next), acUnit.name);
+            startService(next.getRoomId(), next.getFanSpeed(), acUnit);
+        }
+    }
+
+    private void preempt(String kickedRoomId, String newRoomId, FanSpeed newFanSpeed) {
+        // 新房间接替被踢出房间所在机组的槽位
+        int kickedOrdinal = registry.require(kickedRoomId);
+        AcUnit acUnit = unitOf(serviceQueue.get(kickedOrdinal));
+
+        // 关键修复：先从等待队列移除新房间，防止后续 addToWaitingQueue 触发的 enforceNoMissedPreemptions
+        // 再次扫描到该房间从而导致二次抢占（Double Preemption）
+        removeWaiting(newRoomId);
+
+        // 踢出旧房间
+        // 使用不触发分配的停止方法，避免 stopService 在释放槽位时触发 tryAllocateFromWaitingQueue
+        // 从而导致新房间无法立刻占位的竞态
+        stopServiceWithoutAllocation(kickedRoomId);
+        // 加入等待队列，分配等待时间（120秒逻辑时间）
+        addToWaitingQueue(kickedRoomId, roomRequests.get(kickedOrdinal).getFanSpeed(), TIME_SLICE_LOGIC_SECONDS);
+
+        // 立即启动新房间
+        startService(newRoomId, newFanSpeed, acUnit);
+    }
+
+    private void addToWaitingQueue(String roomId, FanSpeed fanSpeed, long waitSeconds) {
+        int ordinal = registry.require(roomId);
+        WaitingInfo info = new WaitingInfo();
+        info.setRoomId(roomId);
+        info.setRoomOrdinal(ordinal);
+        info.setFanSpeed(fanSpeed);
+        info.setTotalWaitTime(waitSeconds);
+        info.setWaitTimeRemaining(waitSeconds);
+        info.setTotalWaitedTime(0); // 初始化为0，表示刚进入等待队列
+        info.setPriorityBoosted(false);
+        // 剩余时间与累计等待时间由这两个时间戳推导，不再逐秒更新
+        info.setEnqueuedAt(simTime);
+        info.setSliceExpiresAt(simTime + waitSeconds);
+        waitingQueue.put(ordinal, info);
+        touch(ordinal);
+        ensureSweep();
+        // 等待满一个时间片时提升优先级；分配的等待时间耗尽时进行时间片检查（同一时刻时先提升）
+        scheduleTimer(boostTimerKeys[ordinal], () -> onPriorityBoost(info), simTime + TIME_SLICE_LOGIC_SECONDS);
+        scheduleTimer(sliceTimerKeys[ordinal], () -> onSliceExpired(info), info.getSliceExpiresAt());
+        for (AcUnit unit : plumbingOf(ordinal)) {
+            unit.allocationHeap.offer(info);
+            unit.preemptorHeap.offer(info);
+            unit.waiting = unit.allocationHeap.size();
+        }
+
+        updateRoomStatus(roomId, RoomStatus.WAITING);
+        log.info("Added to Waiting Queue: Room={}, WaitTime={}", roomId, waitSeconds);
+        // 在每次有新的等待者加入时，立即检查是否存在可以发生的抢占，
+        // 防止出现"等待队列可以抢占服务队列但未抢占"的不一致情况。
+        enforceNoMissedPreemptions();
+    }
+
+    private void updateRoomStatus(String roomId, RoomStatus status) {
+        if (roomStateStore.update(roomId, r -> r.setStatus(status)).isPresent()) {
+            reanchor(roomId);
+            // 推送 MQTT 状态
+            mqttService.publishStatus(roomId);
+        }
+    }
+
+    private void createBillingDetail(ServiceUnit unit) {
+        BillingDetail detail = new BillingDetail();
+        detail.setRoomId(unit.getRoomId());
+        detail.setRequestTime(unit.getStartTime()); // 简化: 请求时间约等于开始时间
+        detail.setStartTime(unit.getStartTime());
+        // 使用逻辑秒记录本次会话时长，避免与真实时间刻度产生偏差
+        long duration = unit.getServedDurationSeconds();
+        detail.setDuration(duration);
+        // 将结束时间设置为开始时间加上逻辑秒数，保持展示一致性
+        detail.setEndTime(unit.getStartTime().plusSeconds(duration));
+        detail.setFanSpeed(unit.getFanSpeed());
+
+        // 在账本中结算本次会话：会话费用按分取整后计入累计费用，
+        // 详单费用、详单累计费用与房间总费用均由同一组整数换算，逐分一致
+        int ordinal = track(unit.getRoomId());
+        long cents = ledger.settle(ordinal);
+        unit.setCurrentFee(0.0);
+        detail.setFee(cents / 100.0);
+        double cumulativeFee = RoomLedger.milliToYuan(ledger.getSettledFeeMilli(ordinal));
+        roomStateStore.update(unit.getRoomId(), r -> r.setTotalFee(cumulativeFee));
+
+        detail.setCumulativeFee(cumulativeFee);
+        billingDetailWriter.append(detail);
+    }
+
+    private static int getPriority(FanSpeed speed) {
+        switch (speed) {
+            case HIGH:
+                return 3;
+            case MIDDLE:
+                return 2;
+            case LOW:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    // 辅助: 返回指定风速每分钟的温度变化速率（度/分钟）
+    private double getRatePerMin(FanSpeed speed) {
+        switch (speed) {
+            case HIGH:
+                return 1.0;
+            case MIDDLE:
+                return 0.5;
+            case LOW:
+                return 1.0 / 3.0;
+            default:
+                return 0.0;
+        }
+    }
+
+    private static int getEffectivePriority(WaitingInfo waiter) {
+        // 如果等待者等待已经超过时间片，则视为提升一级优先
+        return getPriority(waiter.getFanSpeed()) + (waiter.isPriorityBoosted() ? 1 : 0);
+    }
+
+    // --- 事件驱动模拟: 推进逻辑时间、处理到期事件 ---
+
+    // 周期性巡检间隔（逻辑秒），对应 1 秒真实时间
+    // timeScaleMs: 多少毫秒真实时间 = 1分钟逻辑时间 (默认10000ms = 10s)
+    private double sweepIntervalSeconds() {
+        return 60.0 / (timeScaleMs / 1000.0);
+    }
+
+    private void schedule(String key, EventType type, String roomId, double time) {
+        events.offer(new SimEvent(key, type, roomId, time));
+    }
+
+    /**
+     * 依次处理所有已到期的事件（处理每个事件前先把状态推进到它的到期时刻），最后把状态推进到当前时刻
+     */
+    private void catchUp() {
+        double now = timeService.getLogicSeconds();
+        SimEvent event;
+        while ((event = events.peek()) != null && event.time <= now) {
+            events.poll();
+            advanceTo(event.time);
+            handleEvent(event);
+            // 事件处理后，分配空闲槽位，并再次强制检查是否存在等待者可以抢占服务队列中的低优先级对象，
+            // 保证任何时刻都不会出现可抢占却未抢占的情况。
+            allocateIdleSlots();
+            enforceNoMissedPreemptions();
+        }
+        advanceTo(now);
+    }
+
+    /**
+     * 把送风中的房间推进到逻辑时间 time（服务对象数受槽位数限制）。
+     * 非送风房间的回温轨迹是惰性的，不在这里求值。
+     */
+    private void advanceTo(double time) {
+        if (time <= simTime) {
+            return;
+        }
+        double delta = time - simTime;
+        for (AcUnit unit : units) {
+            unit.busySlotSeconds += unit.serving.size() * delta;
+        }
+        simTime = time;
+        simulatedSeconds = simTime - createdTime;
+
+        for (int i = 0; i < serviceQueue.size(); i++) {
+            materialize(serviceQueue.ordinalAt(i));
+        }
+    }
+
+    /**
+     * 按轨迹把送风房间在 simTime 时刻的温度、会话费用和服务时长写入账本与服务对象。
+     * 只更新基本类型字段；房间对象（装箱的 Double）在状态变化、结算和巡检推送时才同步。
+     */
+    private void materialize(int ordinal) {
+        TemperatureTrajectory trajectory = trajectories.get(ordinal);
+        ServiceUnit unit = serviceQueue.get(ordinal);
+        if (trajectory == null || unit == null || !ledger.isTracked(ordinal) || !trajectory.isServing()) {
+            return;
+        }
+        ledger.setTempCenti(ordinal, trajectory.tempCentiAt(simTime));
+        long sessionFeeMilli = trajectory.sessionFeeMilliAt(simTime);
+        ledger.setSessionFeeMilli(ordinal, sessionFeeMilli);
+        unit.setCurrentFee(RoomLedger.milliToYuan(sessionFeeMilli));
+        unit.setServedDurationSeconds(Math.round(trajectory.servedAt(simTime)));
+        unitOf(unit).victimHeap.update(unit.getRoomId());
+    }
+
+    /**
+     * 把账本中的温度与累计费用写回房间对象，并标记为脏数据由 RoomStateStore 异步批量写回数据库。
+     * 温度被外部修改时保留外部值，由随后的命令重新建立轨迹。
+     */
+    private boolean syncRoom(String roomId) {
+        int ordinal = track(roomId);
+        return roomStateStore.update(roomId, room -> {
+            int tempCenti = ledger.getTempCenti(ordinal);
+            if (tempCenti != RoomLedger.NO_TEMP && !isTempModifiedExternally(room, ordinal)) {
+                writeTemp(room, ordinal, tempCenti);
+            }
+            room.setTotalFee(RoomLedger.milliToYuan(ledger.getTotalFeeMilli(ordinal)));
+        }).isPresent();
+    }
+
+    // 返回房间序号，房间首次被本分片调度时按其当前的总费用在账本中登记
+    private int track(String roomId) {
+        int ordinal = registry.require(roomId);
+        if (!ledger.isTracked(ordinal)) {
+            Room room = roomStateStore.current(roomId);
+            ledger.track(ordinal, room == null ? null : room.getTotalFee());
+        }
+        return ordinal;
+    }
+
+    /**
+     * 等待者在逻辑时间 time 时已累计等待的秒数
+     */
+    static long waitedSeconds(WaitingInfo info, double time) {
+        // 加上极小量，避免浮点误差使恰好到期的等待者少算一秒
+        return Math.max(0L, (long) Math.floor(time - info.getEnqueuedAt() + 1e-6));
+    }
+
+    private long waitedSeconds(WaitingInfo info) {
+        return waitedSeconds(info, simTime);
+    }
+
+    /**
+     * 安排等待者定时器；若比时间轮当前最早的到期时间更早，同步提前 TIMERS 事件
+     */
+    private void scheduleTimer(String key, Runnable action, double deadline) {
+        waiterTimers.schedule(key, action, deadline);
+        SimEvent pending = events.get(TIMERS_KEY);
+        if (pending == null || deadline < pending.time) {
+            schedule(TIMERS_KEY, EventType.TIMERS, null, deadline);
+        }
+    }
+
+    private void onPriorityBoost(WaitingInfo info) {
+        // 定时器与等待者实例绑定，房间重新入队后旧定时器不再生效
+        if (waitingQueue.get(info.getRoomOrdinal()) != info) {
+            return;
+        }
+        info.setPriorityBoosted(true);
+        touch(info.getRoomOrdinal());
+        for (AcUnit unit : plumbingOf(info.getRoomOrdinal())) {
+            unit.allocationHeap.update(info.getRoomId());
+            unit.preemptorHeap.update(info.getRoomId());
+        }
+    }
+
+    private void onSliceExpired(WaitingInfo info) {
+        if (waitingQueue.get(info.getRoomOrdinal()) != info) {
+            return;
+        }
+        log.info("Time slice expired for Room {} (totalWaited={}s)", info.getRoomId(), waitedSeconds(info));
+        checkTimeSliceAllocation(info);
+    }
+
+    // 把厘度温度写入房间对象，并记录写入值以识别外部修改
+    private void writeTemp(Room room, int ordinal, int tempCenti) {
+        room.setCurrentTemp(RoomLedger.centiToDegrees(tempCenti));
+        ledger.setWrittenTempCenti(ordinal, tempCenti);
+    }
+
+    private boolean isTempModifiedExternally(Room room, int ordinal) {
+        int written = ledger.getWrittenTempCenti(ordinal);
+        return written == RoomLedger.NO_TEMP || room.getCurrentTemp() == null
+                || RoomLedger.toCenti(room.getCurrentTemp()) != written;
+    }
+
+    /**
+     * 房间状态或送风参数变化后，先按旧轨迹求出当前温度写回房间，再按当前状态重新建立温度轨迹并安排该房间的下一个事件：
+     * - SERVING: 按风速速率趋向目标温度，到达时刻安排 TARGET_REACHED
+     * - IDLE（开机）: 按回温速率远离目标温度，到达重启阈值（目标温度 ±1 度）的时刻安排 REWARM
+     * - SHUTDOWN / WAITING: 按回温速率趋向当前模式的初始温度，到达后保持不变（不需要事件）
+     * 送风房间的费用必须已推进到 simTime。
+     */
+    private void reanchor(String roomId) {
+        int ordinal = registry.require(roomId);
+        TemperatureTrajectory previous = trajectories.remove(ordinal);
+        events.remove(roomEventKeys[ordinal]);
+        touch(ordinal);
+        Room published = roomStateStore.current(roomId);
+        if (published == null || published.getCurrentTemp() == null) {
+            return;
+        }
+        track(roomId);
+        Room room = roomStateStore.update(roomId, r -> {
+            // 沿用上一段轨迹的温度；若轨迹期间温度被外部修改，则以外部值为准
+            int anchor = previous != null && !isTempModifiedExternally(r, ordinal) ? previous.tempCentiAt(simTime)
+                    : RoomLedger.toCenti(r.getCurrentTemp());
+            ledger.setTempCenti(ordinal, anchor);
+            writeTemp(r, ordinal, anchor);
+            r.setTotalFee(RoomLedger.milliToYuan(ledger.getTotalFeeMilli(ordinal)));
+        }).orElseThrow();
+        int temp = ledger.getTempCenti(ordinal);
+        Double targetTemp = room.getTargetTemp();
+        ServiceUnit unit = serviceQueue.get(ordinal);
+
+        if (room.getStatus() == RoomStatus.SERVING && unit != null && targetTemp != null) {
+            int target = RoomLedger.toCenti(targetTemp);
+            double ratePerSec = getRatePerMin(unit.getFanSpeed()) / 60.0 * RoomLedger.CENTI_PER_DEGREE;
+            int neededChange = room.getMode() == Mode.COOL ? temp - target : target - temp;
+            // 已在目标温度或超额（例如调整了目标温度）时立即作为事件处理：停止送风，但不把温度拉回目标
+            double endTime = simTime + Math.max(0, neededChange) / ratePerSec;
+            double tempRate = room.getMode() == Mode.COOL ? -ratePerSec : ratePerSec;
+            trajectories.put(ordinal, TemperatureTrajectory.serving(simTime, endTime, temp, tempRate,
+                    ledger.getSettledFeeMilli(ordinal), ledger.getSessionFeeMilli(ordinal),
+                    unit.getServedDurationSeconds()));
+            schedule(roomEventKeys[ordinal], EventType.TARGET_REACHED, roomId, endTime);
+        } else if (room.getStatus() == RoomStatus.IDLE && room.getIsOn() != null && room.getIsOn()
+                && targetTemp != null) {
+            int target = RoomLedger.toCenti(targetTemp);
+            double recoveryRate = RECOVERY_RATE_PER_SEC * RoomLedger.CENTI_PER_DEGREE;
+            // 制冷模式: 温度回升到目标温度+1度时重新启动; 制热模式: 温度下降到目标温度-1度时重新启动
+            int threshold = room.getMode() == Mode.COOL ? target + RoomLedger.CENTI_PER_DEGREE
+                    : target - RoomLedger.CENTI_PER_DEGREE;
+            double tempRate = room.getMode() == Mode.COOL ? recoveryRate : -recoveryRate;
+            double endTime = simTime + Math.max(0.0, (threshold - temp) / tempRate);
+            trajectories.put(ordinal, TemperatureTrajectory.recovering(simTime, endTime, temp, tempRate));
+            schedule(roomEventKeys[ordinal], EventType.REWARM, roomId, endTime);
+        } else if (room.getStatus() == RoomStatus.SHUTDOWN || room.getStatus() == RoomStatus.WAITING) {
+            // 关机或等待状态：以 0.5度/min 趋向对应模式下的初始温度，到达后保持不变
+            int initial = RoomLedger.toCenti(initialTempOf(room));
+            if (temp != initial) {
+                double recoveryRate = RECOVERY_RATE_PER_SEC * RoomLedger.CENTI_PER_DEGREE;
+                double tempRate = temp > initial ? -recoveryRate : recoveryRate;
+                double endTime = simTime + Math.abs(temp - initial) / recoveryRate;
+                trajectories.put(ordinal, TemperatureTrajectory.recovering(simTime, endTime, temp, tempRate));
+            }
+        }
+    }
+
+    // 根据当前模式选择对应的初始温度
+    private static double initialTempOf(Room room) {
+        if (room.getMode() == Mode.HEAT) {
+            return room.getInitialTempHeat() != null ? room.getInitialTempHeat() : room.getInitialTemp();
+        }
+        return room.getInitialTempCool() != null ? room.getInitialTempCool() : room.getInitialTemp();
+    }
+
+    private void handleEvent(SimEvent event) {
+        switch (event.type) {
+            case TARGET_REACHED:
+                if (serviceQueue.containsKey(registry.require(event.roomId))) {
+                    Room room = roomStateStore.current(event.roomId);
+                    log.info("Room {} temp {} reached target {}, stopping service", event.roomId,
+                            room == null ? null : room.getCurrentTemp(), room == null ? null : room.getTargetTemp());
+                    // 达到目标温度，停止送风
+                    applyStopSupply(event.roomId, false);
+                }
+                break;
+            case REWARM:
+                Room room = roomStateStore.current(event.roomId);
+                if (room != null && room.getStatus() == RoomStatus.IDLE) {
+                    // 重新请求送风
+                    RequestInfo req = roomRequests.get(registry.require(event.roomId));
+                    if (req != null) {
+                        applyRequestSupply(req.getRoomId(), req.getMode(), req.getTargetTemp(), req.getFanSpeed());
+                    }
+                }
+                break;
+            case TIMERS:
+                waiterTimers.advance(simTime, Runnable::run);
+                if (!waiterTimers.isEmpty()) {
+                    schedule(TIMERS_KEY, EventType.TIMERS, null, waiterTimers.nextDeadline());
+                }
+                break;
+            case SWEEP:
+                sweep();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 服务或等待队列非空时确保已安排周期性巡检
+     */
+    private void ensureSweep() {
+        if (events.get(SWEEP_KEY) == null) {
+            schedule(SWEEP_KEY, EventType.SWEEP, null, simTime + sweepIntervalSeconds());
+        }
+    }
+
+    /**
+     * 周期性巡检（每 1 秒真实时间一次，仅在服务或等待队列非空时进行）：
+     * 移除未入住或已关机的房间，推送送风房间的实时状态。
+     */
+    private void sweep() {
+        // 安全检查：移除未入住或不可服务的单元（立即产生详单）
+        // 倒序遍历已占用序号：循环中只会移除当前房间，不需要复制队列
+        for (int i = serviceQueue.size() - 1; i >= 0; i--) {
+            ServiceUnit u = serviceQueue.get(serviceQueue.ordinalAt(i));
+            String rid = u.getRoomId();
+            Room r = roomStateStore.current(rid);
+            if (r != null && (r.getCustomerName() == null || r.getCustomerName().trim().isEmpty())) {
+                log.warn("Room {} is not checked in, stopping service", rid);
+                removeService(rid);
+                createBillingDetail(u);
+                roomStateStore.update(rid, room -> {
+                    room.setStatus(RoomStatus.SHUTDOWN);
+                    room.setIsOn(false);
+                });
+                reanchor(rid);
+                mqttService.publishStatus(rid);
+            }
+        }
+
+        // 安全检查：如果房间未入住或已关机，从等待队列移除
+        for (int i = waitingQueue.size() - 1; i >= 0; i--) {
+            WaitingInfo info = waitingQueue.get(waitingQueue.ordinalAt(i));
+            Room room = roomStateStore.current(info.getRoomId());
+            if (room == null) {
+                continue;
+            }
+            // 检查是否未入住
+            if (room.getCustomerName() == null || room.getCustomerName().trim().isEmpty()) {
+                log.warn("Room {} is not checked in, removing from waiting queue", info.getRoomId());
+                removeWaiting(info.getRoomId());
+                updateRoomStatus(info.getRoomId(), RoomStatus.SHUTDOWN);
+                continue;
+            }
+            // 检查是否已关机
+            if (room.getIsOn() == null || !room.getIsOn()) {
+                log.warn("Room {} is powered off, removing from waiting queue", info.getRoomId());
+                removeWaiting(info.getRoomId());
+                updateRoomStatus(info.getRoomId(), RoomStatus.SHUTDOWN);
+            }
+        }
+
+        // 送风房间已按轨迹推进到当前时刻，把账本同步到房间对象后推送实时状态
+        for (int i = 0; i < serviceQueue.size(); i++) {
+            String rid = registry.roomIdOf(serviceQueue.ordinalAt(i));
+            if (syncRoom(rid)) {
+                mqttService.publishStatus(rid);
+            }
+        }
+
+        if (!serviceQueue.isEmpty() || !waitingQueue.isEmpty()) {
+            ensureSweep();
+        }
+    }
+
+    /**
+     * 等待队列倒计时与时间片检查完成后，逐台机组批量分配空闲槽位直到机组满或没有可接入的等待者
+     */
+    private void allocateIdleSlots() {
+        for (AcUnit unit : units) {
+            while (unit.hasFreeSlot() && !unit.allocationHeap.isEmpty()) {
+                tryAllocateFromWaitingQueue(unit);
+            }
+        }
+    }
+
+    private void checkTimeSliceAllocation(WaitingInfo waiter) {
+        // 时间片轮转策略（严格遵循风速优先级）:
+        // 1. 首先检查是否有低于等待房间风速的服务对象
+        // 2. 如果有，按优先级调度规则抢占（选择风速最低且服务时间最长的）
+        // 3. 如果没有（全是高优先级或同优先级），检查是否有同风速的
+        // 4. 如果有同风速的，替换服务时间最长的
+        // 5. 如果全是高优先级的，继续等待（风速优先级的绝对性）
+
+        int waiterPriority = getPriority(waiter.getFanSpeed());
+        int effectivePriority = getEffectivePriority(waiter);
+        // 可接入机组的受害者堆顶中最靠前者即风速最低、服务时间最长的服务对象：
+        // - 若其优先级低于等待者的有效优先级，则它就是应被抢占的对象；
+        // - 否则可接入机组中不存在更低优先级的对象，若堆顶与等待者同风速，它就是同风速中服务时间最长的。
+        ServiceUnit top = lowestVictim(plumbingOf(waiter.getRoomOrdinal()));
+        if (top == null) {
+            return;
+        }
+
+        if (getPriority(top.getFanSpeed()) < effectivePriority) {
+            // 有低优先级的，抢占
+            ServiceUnit toPreempt = top;
+            log.info("Time slice: {} (priority {}) preempts {} (priority {})",
+                    waiter.getRoomId(), waiterPriority, toPreempt.getRoomId(), getPriority(toPreempt.getFanSpeed()));
+            preempt(toPreempt.getRoomId(), waiter.getRoomId(), waiter.getFanSpeed());
+            return;
+        }
+
+        // 查找同风速的服务对象
+        if (top.getFanSpeed() == waiter.getFanSpeed()) {
+            // 有同风速的，时间片轮转
+            ServiceUnit toReplace = top;
+            log.info("Time slice swap: {} replaces {} (same priority {})",
+                    waiter.getRoomId(), toReplace.getRoomId(), waiterPriority);
+            preempt(toReplace.getRoomId(), waiter.getRoomId(), waiter.getFanSpeed());
+        } else {
+            // 全是高优先级的，风速优先级绝对性：继续等待
+            // 不重置等待时间，继续累计等待时间，等待将来的服务机会
+            log.info("Room {} cannot preempt (all higher priority in service), continue waiting (totalWaited={}s)",
+                    waiter.getRoomId(), waitedSeconds(waiter));
+            // 注意：不重新安排时间片，保持当前状态
+            // 累计等待时间由入队时间戳推导，会随逻辑时间推进继续累计
+        }
+    }
+
+    private ServiceUnit removeService(String roomId) {
+        int ordinal = registry.require(roomId);
+        ServiceUnit unit = serviceQueue.remove(ordinal);
+        if (unit != null) {
+            touch(ordinal);
+            AcUnit acUnit = unitOf(unit);
+            acUnit.serving.remove(ordinal);
+            acUnit.victimHeap.remove(roomId);
+        }
+        return unit;
+    }
+
+    private WaitingInfo removeWaiting(String roomId) {
+        int ordinal = registry.require(roomId);
+        WaitingInfo info = waitingQueue.remove(ordinal);
+        waiterTimers.cancel(boostTimerKeys[ordinal]);
+        waiterTimers.cancel(sliceTimerKeys[ordinal]);
+        if (info != null) {
+            touch(ordinal);
+            for (AcUnit unit : plumbingOf(ordinal)) {
+                unit.allocationHeap.remove(roomId);
+                unit.preemptorHeap.remove(roomId);
+                unit.waiting = unit.allocationHeap.size();
+            }
+        }
+        return info;
+    }
+
+    private AcUnit unitOf(ServiceUnit unit) {
+        return unitByName.get(unit.getAcUnit());
+    }
+
+    /**
+     * 房间可接入的机组（主机组在前）。未配置连通关系或配置的机组均不存在时可接入全部机组
+     */
+    private List<AcUnit> plumbingOf(int ordinal) {
+        List<AcUnit> cached = plumbing.get(ordinal);
+        if (cached != null) {
+            return cached;
+        }
+        List<AcUnit> result = new ArrayList<>();
+        for (String unitName : affinity.apply(registry.roomIdOf(ordinal))) {
+            AcUnit unit = unitByName.get(unitName);
+            if (unit != null && !result.contains(unit)) {
+                result.add(unit);
+            }
+        }
+        List<AcUnit> resolved = result.isEmpty() ? units : result;
+        plumbing.put(ordinal, resolved);
+        return resolved;
+    }
+
+    /**
+     * 在给定机组的受害者堆顶中选出最先应被抢占的服务对象
+     */
+    private static ServiceUnit lowestVictim(List<AcUnit> candidates) {
+        ServiceUnit lowest = null;
+        for (AcUnit unit : candidates) {
+            ServiceUnit top = unit.victimHeap.peek();
+            if (top != null && (lowest == null || VICTIM_ORDER.compare(top, lowest) < 0)) {
+                lowest = top;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * 各机组的占用情况（供管理接口读取）
+     */
+    List<SchedulerService.UnitUsage> getUnitUsage() {
+        double elapsed = simulatedSeconds;
+        List<SchedulerService.UnitUsage> result = new ArrayList<>(units.size());
+        for (AcUnit unit : units) {
+            SchedulerService.UnitUsage usage = new SchedulerService.UnitUsage();
+            usage.setZone(name);
+            usage.setUnit(unit.name);
+            usage.setSlots(unit.slots);
+            usage.setBusy(unit.serving.size());
+            usage.setWaiting(unit.waiting);
+            usage.setUtilization((double) usage.getBusy() / unit.slots);
+            usage.setAverageUtilization(elapsed <= 0 ? 0.0 : unit.busySlotSeconds / (unit.slots * elapsed));
+            usage.setStolenSlots(unit.stolenSlots);
+            result.add(usage);
+        }
+        return result;
+    }
+
+    // 标记房间的队列状态（或送风轨迹）已变化，在本批处理结束时发布
+    private void touch(int ordinal) {
+        if (!changed[ordinal]) {
+            changed[ordinal] = true;
+            changedOrdinals[changedCount++] = ordinal;
+        }
+    }
+
+    /**
+     * 把本批处理中变化的房间复制成不可变记录，合并进全局快照并发布（CAS，不阻塞调度线程）
+     */
+    private void publishSnapshot() {
+        if (changedCount == 0) {
+            return;
+        }
+        List<SchedulerSnapshot.Entry> updates = new ArrayList<>(changedCount);
+        for (int i = 0; i < changedCount; i++) {
+            int ordinal = changedOrdinals[i];
+            changed[ordinal] = false;
+            ServiceUnit unit = serviceQueue.get(ordinal);
+            ServiceUnit serviceCopy = null;
+            if (unit != null) {
+                serviceCopy = new ServiceUnit();
+                BeanUtils.copyProperties(unit, serviceCopy);
+            }
+            WaitingInfo info = waitingQueue.get(ordinal);
+            WaitingInfo waitingCopy = null;
+            if (info != null) {
+                waitingCopy = new WaitingInfo();
+                BeanUtils.copyProperties(info, waitingCopy);
+            }
+            updates.add(new SchedulerSnapshot.Entry(registry.roomIdOf(ordinal), ordinal, 0L, serviceCopy,
+                    unit == null ? null : trajectories.get(ordinal), waitingCopy));
+        }
+        changedCount = 0;
+        SchedulerSnapshot.publish(snapshot, updates);
+    }
+
+    /**
+     * 强制检查并执行等待队列中能够对服务队列发起的抢占。此方法保证：在任意时刻（按真实时间刻度），
+     * 不会存在一个等待者可以抢占服务队列但没有被抢占的情况。
+     *
+     * 实现细节：
+     * - 对每台机组，按可接入该机组的等待者的“有效优先级”降序选择候选（基础风速优先级 + 超过时间片的提升），
+     * - 与该机组中优先级最低且服务时间最长的服务对象进行比较与抢占，
+     * - 重复直到所有机组都不存在可执行的抢占。
+     */
+    private void enforceNoMissedPreemptions() {
+        if (enforcingPreemptions || batching) {
+            return;
+        }
+        enforcingPreemptions = true;
+        try {
+            if (waitingQueue.isEmpty() || serviceQueue.isEmpty()) {
+                return;
+            }
+
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (AcUnit unit : units) {
+                    if (tryEnforcePreemption(unit)) {
+                        // 队列已变化，从第一台机组重新检查
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        } finally {
+            enforcingPreemptions = false;
+        }
+    }
+
+    /**
+     * 对单台机组执行一次抢占检查：比较可接入该机组的最佳等待者与该机组的受害者堆顶
+     *
+     * @return 是否发生了抢占
+     */
+    private boolean tryEnforcePreemption(AcUnit unit) {
+        // 选出可接入该机组、最有资格抢占的等待者（有效优先级最高，然后累计等待时间）
+        WaitingInfo bestWaiting = unit.preemptorHeap.peek();
+        if (bestWaiting == null)
+            return false;
+
+        // 选出该机组中最容易被抢占的服务对象（最低优先级，若相同则服务时间最长）
+        ServiceUnit candidate = unit.victimHeap.peek();
+        if (candidate == null)
+            return false;
+
+        int candidatePriority = getPriority(candidate.getFanSpeed());
+        int bestEffective = getEffectivePriority(bestWaiting);
+
+        if (bestEffective > candidatePriority) {
+            log.info("Enforce preempt: waiting {} (effPr={}) preempts {} (pr={})",
+                    bestWaiting.getRoomId(), bestEffective, candidate.getRoomId(), candidatePriority);
+            preempt(candidate.getRoomId(), bestWaiting.getRoomId(), bestWaiting.getFanSpeed());
+            return true;
+        } else if (bestEffective == candidatePriority) {
+            // 当有效优先级相等时，仅在同风速且等待者已达到时间片时进行替换（轮转）
+            if (bestWaiting.getFanSpeed() == candidate.getFanSpeed()
+                    && bestWaiting.isPriorityBoosted()) {
+                log.info("Enforce same-speed swap: waiting {} replaces {} (priority={})",
+                        bestWaiting.getRoomId(), candidate.getRoomId(), candidatePriority);
+                preempt(candidate.getRoomId(), bestWaiting.getRoomId(), bestWaiting.getFanSpeed());
+                return true;
+            }
+            // 否则不抢占，该机组的最佳等待者也无法抢占，继续检查下一台机组
+        }
+        return false;
+    }
+
+    /**
+     * 获取当前送风会话的费用，若不在服务队列则返回0
+     */
+    double getCurrentSessionFee(String roomId) {
+        int ordinal = registry.ordinalOf(roomId);
+        ServiceUnit unit = ordinal < 0 ? null : serviceQueue.get(ordinal);
+        if (unit == null) {
+            return 0.0;
+        }
+        TemperatureTrajectory trajectory = trajectories.get(ordinal);
+        if (trajectory != null && trajectory.isServing()) {
+            return trajectory.sessionFeeAt(timeService.getLogicSeconds());
+        }
+        return unit.getCurrentFee();
+    }
+
+    /**
+     * 送风中房间的实时总费用，不在送风中时返回 null
+     */
+    Double getCachedTotalFee(String roomId) {
+        int ordinal = registry.ordinalOf(roomId);
+        TemperatureTrajectory trajectory = ordinal < 0 ? null : trajectories.get(ordinal);
+        if (trajectory != null && trajectory.isServing()) {
+            return trajectory.totalFeeAt(timeService.getLogicSeconds());
+        }
+        // 不在送风中时房间对象上的总费用即为已结算的累计费用
+        return null;
+    }
+
+    /**
+     * 房间当前的温度/费用轨迹（不可变），没有轨迹时返回 null
+     */
+    TemperatureTrajectory trajectoryOf(String roomId) {
+        int ordinal = registry.ordinalOf(roomId);
+        return ordinal < 0 ? null : trajectories.get(ordinal);
+    }
+
+    /**
+     * 把房间副本的温度（以及送风中的总费用与本次会话费用）插值到当前逻辑时间，供读接口使用
+     */
+    void applyCurrentState(Room copy) {
+        int ordinal = registry.ordinalOf(copy.getRoomId());
+        TemperatureTrajectory trajectory = ordinal < 0 ? null : trajectories.get(ordinal);
+        if (trajectory == null) {
+            return;
+        }
+        double now = timeService.getLogicSeconds();
+        copy.setCurrentTemp(trajectory.tempAt(now));
+        if (trajectory.isServing()) {
+            copy.setTotalFee(trajectory.totalFeeAt(now));
+            copy.setCurrentSessionFee(trajectory.sessionFeeAt(now));
+        }
+    }
+
+    /**
+     * 清零账本中的费用（用于入住/退房时）
+     */
+    void clearTotalFeeCache(String roomId) {
+        await(submit(() -> {
+            int ordinal = registry.ordinalOf(roomId);
+            if (ordinal >= 0) {
+                ledger.resetFee(ordinal);
+            }
+        }));
+    }
+}
@@ -0,0 +1,182 @@
+package com.bupt.hotel.service;
+
+import com.bupt.hotel.service.SchedulerService.ServiceUnit;
+import com.bupt.hotel.service.SchedulerService.WaitingInfo;
+import org.springframework.beans.BeanUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 调度队列的不可变快照：按房间序号保存每个房间在服务队列/等待队列中的状态，以及该状态最近一次变化时的版本号。
+ * 各分片的调度线程在处理完一个命令或一批到期事件后，把本批变化的房间合并进新快照，通过 CAS 发布
+ * （不加锁，不阻塞调度）；读接口只做一次 volatile 读取，无需等待。
+ * 版本号全局单调递增，每次发布加一。离开队列的房间保留一条记录，并记下最近一次离开服务队列/等待队列时的版本号，
+ * 增量查询据此只把在 sinceVersion 之后确实离开过该队列的房间报告为移除。
+ *
+ * 服务时长、本次会话费用、剩余等待时间等随时间变化的字段不计入版本，读取时按当前逻辑时间推导。
+ */
+public final class SchedulerSnapshot {
+
+    static final SchedulerSnapshot EMPTY = new SchedulerSnapshot(0L, new Entry[0]);
+
+    private final long version;
+    // 房间序号 -> 队列状态，null 表示从未进入过队列
+    private final Entry[] entries;
+
+    private SchedulerSnapshot(long version, Entry[] entries) {
+        this.version = version;
+        this.entries = entries;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 版本号大于 sinceVersion 的房间（包含已离开队列的房间）；sinceVersion 小于 0 时返回当前在队列中的房间
+     */
+    public List<Entry> changedSince(long sinceVersion) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry == null) {
+                continue;
+            }
+            if (sinceVersion < 0 ? entry.isQueued() : entry.version > sinceVersion) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 把一批房间的新状态合并进当前快照并以新版本号发布（CAS 失败时基于最新快照重试）
+     */
+    static SchedulerSnapshot publish(AtomicReference<SchedulerSnapshot> ref, List<Entry> updates) {
+        while (true) {
+            SchedulerSnapshot current = ref.get();
+            long next = current.version + 1;
+            int length = current.entries.length;
+            for (Entry update : updates) {
+                length = Math.max(length, update.ordinal + 1);
+            }
+            Entry[] entries = Arrays.copyOf(current.entries, length);
+            for (Entry update : updates) {
+                entries[update.ordinal] = update.publishedAs(next, entries[update.ordinal]);
+            }
+            SchedulerSnapshot published = new SchedulerSnapshot(next, entries);
+            if (ref.compareAndSet(current, published)) {
+                return published;
+            }
+        }
+    }
+
+    /**
+     * 单个房间的队列状态。service/waiting 为调度线程上对象的副本，发布后不再修改
+     */
+    public static final class Entry {
+        private final String roomId;
+        private final int ordinal;
+        private final long version;
+        private final ServiceUnit service;
+        private final TemperatureTrajectory trajectory;
+        private final WaitingInfo waiting;
+        // 最近一次离开服务队列/等待队列时的版本号，从未离开过为 0
+        private final long leftServiceVersion;
+        private final long leftWaitingVersion;
+
+        Entry(String roomId, int ordinal, long version, ServiceUnit service, TemperatureTrajectory trajectory,
+              WaitingInfo waiting) {
+            this(roomId, ordinal, version, service, trajectory, waiting, 0L, 0L);
+        }
+
+        private Entry(String roomId, int ordinal, long version, ServiceUnit service,
+                      TemperatureTrajectory trajectory, WaitingInfo waiting, long leftServiceVersion,
+                      long leftWaitingVersion) {
+            this.roomId = roomId;
+            this.ordinal = ordinal;
+            this.version = version;
+            this.service = service;
+            this.trajectory = trajectory;
+            this.waiting = waiting;
+            this.leftServiceVersion = leftServiceVersion;
+            this.leftWaitingVersion = leftWaitingVersion;
+        }
+
+        // 以版本号 version 发布，替换该房间之前的记录 previous（可为 null）
+        private Entry publishedAs(long version, Entry previous) {
+            long leftService = previous == null ? 0L
+                    : previous.isServing() && service == null ? version : previous.leftServiceVersion;
+            long leftWaiting = previous == null ? 0L
+                    : previous.isWaiting() && waiting == null ? version : previous.leftWaitingVersion;
+            return new Entry(roomId, ordinal, version, service, trajectory, waiting, leftService, leftWaiting);
+        }
+
+        public String getRoomId() {
+            return roomId;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean isServing() {
+            return service != null;
+        }
+
+        public boolean isWaiting() {
+            return waiting != null;
+        }
+
+        public boolean isQueued() {
+            return service != null || waiting != null;
+        }
+
+        /**
+         * 当前不在服务队列，且在 sinceVersion 之后离开过服务队列
+         */
+        public boolean leftServiceSince(long sinceVersion) {
+            return service == null && leftServiceVersion > sinceVersion;
+        }
+
+        /**
+         * 当前不在等待队列，且在 sinceVersion 之后离开过等待队列
+         */
+        public boolean leftWaitingSince(long sinceVersion) {
+            return waiting == null && leftWaitingVersion > sinceVersion;
+        }
+
+        /**
+         * 服务对象的新副本，服务时长与本次会话费用推导到逻辑时间 now；不在服务队列时返回 null
+         */
+        public ServiceUnit serviceAt(double now) {
+            if (service == null) {
+                return null;
+            }
+            ServiceUnit copy = new ServiceUnit();
+            BeanUtils.copyProperties(service, copy);
+            if (trajectory != null && trajectory.isServing()) {
+                copy.setCurrentFee(trajectory.sessionFeeAt(now));
+                copy.setServedDurationSeconds(Math.round(trajectory.servedAt(now)));
+            }
+            return copy;
+        }
+
+        /**
+         * 等待信息的新副本，剩余时间与累计等待时间推导到逻辑时间 now；不在等待队列时返回 null
+         */
+        public WaitingInfo waitingAt(double now) {
+            if (waiting == null) {
+                return null;
+            }
+            WaitingInfo copy = new WaitingInfo();
+            BeanUtils.copyProperties(waiting, copy);
+            long waited = SchedulerShard.waitedSeconds(waiting, now);
+            copy.setTotalWaitedTime(waited);
+            copy.setWaitTimeRemaining(Math.max(0L, waiting.getTotalWaitTime() - waited));
+            return copy;
+        }
+    }
+}
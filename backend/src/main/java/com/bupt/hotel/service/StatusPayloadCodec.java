@@ -0,0 +1,106 @@
+package com.bupt.hotel.service;
+
+/**
+ * 房间状态的紧凑二进制编码（定长，大端序），供房间控制面板订阅使用。
+ * 与 JSON 格式共用同一个状态主题；首字节为版本号（JSON 负载总是以 '{' 开头），订阅方据此区分格式。
+ *
+ * 版本 1 布局（共 {@link #LENGTH} 字节）：
+ * <pre>
+ *  偏移  长度  字段
+ *   0     1    版本号 = 1
+ *   1     1    status 枚举序号（0xFF 表示为空）
+ *   2     1    mode 枚举序号（0xFF 表示为空）
+ *   3     1    fanSpeed 枚举序号（0xFF 表示为空）
+ *   4     1    标志位：bit0 = isOn
+ *   5     2    currentTemp，厘度（有符号，0x8000 表示为空）
+ *   7     2    targetTemp，厘度（有符号，0x8000 表示为空）
+ *   9     4    本次送风会话费用，毫元
+ *  13     4    累计费用，毫元
+ * </pre>
+ *
+ * 楼层/区域汇总帧（版本 1）：1 字节版本号、2 字节房间数 n，随后 n 个条目，
+ * 每个条目为 1 字节 roomId 长度、roomId（ASCII）与上述 {@link #LENGTH} 字节的房间状态。
+ *
+ * 直接写入调用方复用的字节数组，不产生中间对象。非线程安全，由发布线程独占使用。
+ */
+final class StatusPayloadCodec {
+
+    static final byte VERSION = 1;
+    static final int LENGTH = 17;
+
+    static final int NONE_ENUM = 0xFF;
+    static final int NONE_TEMP = Short.MIN_VALUE;
+
+    private StatusPayloadCodec() {
+    }
+
+    /**
+     * 编码到 buffer 的前 {@link #LENGTH} 个字节。枚举参数传 -1 表示为空，温度参数传 {@link #NONE_TEMP} 表示为空
+     */
+    static void encode(byte[] buffer, int status, int mode, int fanSpeed, boolean isOn, int tempCenti,
+            int targetCenti, long sessionFeeMilli, long totalFeeMilli) {
+        buffer[0] = VERSION;
+        buffer[1] = (byte) (status < 0 ? NONE_ENUM : status);
+        buffer[2] = (byte) (mode < 0 ? NONE_ENUM : mode);
+        buffer[3] = (byte) (fanSpeed < 0 ? NONE_ENUM : fanSpeed);
+        buffer[4] = (byte) (isOn ? 1 : 0);
+        putShort(buffer, 5, clampTemp(tempCenti));
+        putShort(buffer, 7, clampTemp(targetCenti));
+        putInt(buffer, 9, clampFee(sessionFeeMilli));
+        putInt(buffer, 13, clampFee(totalFeeMilli));
+    }
+
+    /**
+     * 把若干房间最近一次发布的状态拼成汇总帧，entries[i] 为空的房间不计入
+     */
+    static byte[] encodeFrame(String[] roomIds, byte[][] entries) {
+        int count = 0;
+        int length = 3;
+        for (int i = 0; i < roomIds.length; i++) {
+            if (entries[i] != null) {
+                count++;
+                length += 1 + roomIds[i].length() + LENGTH;
+            }
+        }
+        byte[] frame = new byte[length];
+        frame[0] = VERSION;
+        putShort(frame, 1, count);
+        int offset = 3;
+        for (int i = 0; i < roomIds.length; i++) {
+            if (entries[i] == null) {
+                continue;
+            }
+            String roomId = roomIds[i];
+            frame[offset++] = (byte) roomId.length();
+            for (int c = 0; c < roomId.length(); c++) {
+                frame[offset++] = (byte) roomId.charAt(c);
+            }
+            System.arraycopy(entries[i], 0, frame, offset, LENGTH);
+            offset += LENGTH;
+        }
+        return frame;
+    }
+
+    private static int clampTemp(int centi) {
+        if (centi == NONE_TEMP) {
+            return NONE_TEMP;
+        }
+        return Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, centi));
+    }
+
+    private static int clampFee(long milli) {
+        return (int) Math.max(0L, Math.min(Integer.MAX_VALUE, milli));
+    }
+
+    private static void putShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 8);
+        buffer[offset + 1] = (byte) value;
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,95 @@
+package com.bupt.hotel.service;
+
+/**
+ * 房间温度与费用在两个调度事件之间的线性轨迹（不可变）。
+ * 调度线程在房间开始送风、送风参数变化或进入 IDLE 回温时发布新的轨迹，
+ * 读取方按当前逻辑时间插值即可得到实时温度与费用，无需等待调度线程推进。
+ * 到达 endTime（送风达到目标温度 / 回温达到重启阈值）后数值保持不变，由对应事件接管。
+ *
+ * 数值采用 {@link RoomLedger} 的定点表示：温度为厘度，费用为毫元。插值总是从锚点出发计算，
+ * 舍入误差不会随求值次数累积。
+ */
+final class TemperatureTrajectory {
+
+    private final double startTime; // 锚点逻辑时间（秒）
+    private final double endTime; // 轨迹终点逻辑时间（秒）
+    private final int startTempCenti;
+    private final double tempRateCenti; // 温度变化速率（厘度/逻辑秒，带方向）
+    private final boolean serving; // 是否为送风轨迹（计费、计时）
+    private final long settledFeeMilli; // 本次会话之前已结算的累计费用
+    private final long startSessionFeeMilli;
+    private final double startServed; // 锚点时本次会话已服务的逻辑秒数
+    private final double feeRateMilli; // 费用增长速率（毫元/逻辑秒）
+
+    private TemperatureTrajectory(double startTime, double endTime, int startTempCenti, double tempRateCenti,
+            boolean serving, long settledFeeMilli, long startSessionFeeMilli, double startServed,
+            double feeRateMilli) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.startTempCenti = startTempCenti;
+        this.tempRateCenti = tempRateCenti;
+        this.serving = serving;
+        this.settledFeeMilli = settledFeeMilli;
+        this.startSessionFeeMilli = startSessionFeeMilli;
+        this.startServed = startServed;
+        this.feeRateMilli = feeRateMilli;
+    }
+
+    /**
+     * 送风轨迹：温度以 tempRateCenti 趋向目标温度，费用按 1 元/度（10 毫元/厘度）同步增长
+     */
+    static TemperatureTrajectory serving(double startTime, double endTime, int startTempCenti, double tempRateCenti,
+            long settledFeeMilli, long startSessionFeeMilli, double startServed) {
+        double feeRateMilli = Math.abs(tempRateCenti) * RoomLedger.MILLI_PER_YUAN / RoomLedger.CENTI_PER_DEGREE;
+        return new TemperatureTrajectory(startTime, endTime, startTempCenti, tempRateCenti, true, settledFeeMilli,
+                startSessionFeeMilli, startServed, feeRateMilli);
+    }
+
+    /**
+     * 回温轨迹：不计费，温度以 tempRateCenti 变化直到 endTime
+     */
+    static TemperatureTrajectory recovering(double startTime, double endTime, int startTempCenti,
+            double tempRateCenti) {
+        return new TemperatureTrajectory(startTime, endTime, startTempCenti, tempRateCenti, false, 0L, 0L, 0.0, 0.0);
+    }
+
+    double getEndTime() {
+        return endTime;
+    }
+
+    boolean isServing() {
+        return serving;
+    }
+
+    private double elapsed(double time) {
+        return Math.max(0.0, Math.min(time, endTime) - startTime);
+    }
+
+    int tempCentiAt(double time) {
+        return startTempCenti + (int) Math.round(tempRateCenti * elapsed(time));
+    }
+
+    long sessionFeeMilliAt(double time) {
+        return startSessionFeeMilli + Math.round(feeRateMilli * elapsed(time));
+    }
+
+    long totalFeeMilliAt(double time) {
+        return settledFeeMilli + sessionFeeMilliAt(time);
+    }
+
+    double servedAt(double time) {
+        return startServed + elapsed(time);
+    }
+
+    double tempAt(double time) {
+        return RoomLedger.centiToDegrees(tempCentiAt(time));
+    }
+
+    double sessionFeeAt(double time) {
+        return RoomLedger.milliToYuan(sessionFeeMilliAt(time));
+    }
+
+    double totalFeeAt(double time) {
+        return RoomLedger.milliToYuan(totalFeeMilliAt(time));
+    }
+}
@@ -15,6 +15,7 @@ public class TimeService {
     private final LocalDateTime startTime = LocalDateTime.now();
     private final LocalDateTime startRealDateTime = LocalDateTime.now();
     private final long startRealTime = System.currentTimeMillis();
+    private final long startNanoTime = System.nanoTime();
 
     /**
      * 获取当前逻辑时间（受缩放影响）。
@@ -28,6 +29,21 @@ public class TimeService {
         return startTime.plusSeconds(logicSeconds);
     }
 
+    /**
+     * 自启动以来经过的逻辑秒数（连续值，不按秒截断），用于事件驱动的调度模拟。
+     */
+    public double getLogicSeconds() {
+        double elapsedRealMs = (System.nanoTime() - startNanoTime) / 1_000_000.0;
+        return elapsedRealMs / timeScaleMs * 60.0;
+    }
+
+    /**
+     * 逻辑秒数对应的真实纳秒数，用于调度线程按下一个事件的时间挂起。
+     */
+    public long logicSecondsToRealNanos(double logicSeconds) {
+        return (long) Math.ceil(logicSeconds / 60.0 * timeScaleMs * 1_000_000.0);
+    }
+
     /**
      * 当前真实时间（墙钟时间）。
      */
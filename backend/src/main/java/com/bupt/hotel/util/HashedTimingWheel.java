@@ -0,0 +1,172 @@
+package com.bupt.hotel.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮：按到期时间把定时任务散列到固定数量的槽中，每个槽覆盖 tickSeconds 的时间跨度，
+ * 插入与按 key 取消均为 O(1)；超过一圈的任务与同槽的其他任务共存，按各自的绝对 tick 区分。
+ * 推进时只检查经过的槽，到期任务按到期时间（相同时按插入顺序）回调。
+ *
+ * 时间单位由调用方决定（调度器使用逻辑秒）。非线程安全，由调用方保证单线程访问。
+ */
+public class HashedTimingWheel<K, T> {
+
+    private static final class Timeout<K, T> {
+        private final K key;
+        private final T payload;
+        private final double deadline;
+        private final long tick;
+        private final long seq;
+        private Timeout<K, T> prev;
+        private Timeout<K, T> next;
+
+        Timeout(K key, T payload, double deadline, long tick, long seq) {
+            this.key = key;
+            this.payload = payload;
+            this.deadline = deadline;
+            this.tick = tick;
+            this.seq = seq;
+        }
+    }
+
+    private static final Comparator<Timeout<?, ?>> EXPIRY_ORDER = Comparator
+            .comparingDouble((Timeout<?, ?> t) -> t.deadline)
+            .thenComparingLong(t -> t.seq);
+
+    private final double tickSeconds;
+    private final int mask;
+    private final Timeout<K, T>[] buckets;
+    private final Map<K, Timeout<K, T>> timeouts = new HashMap<>();
+    // 已推进到的 tick：更早的槽均已处理，该 tick 的槽中可能仍有尚未到期的任务
+    private long currentTick;
+    private long seq;
+
+    /**
+     * @param wheelSize   槽数量（向上取整为 2 的幂）
+     * @param tickSeconds 每个槽覆盖的时间跨度
+     * @param startTime   时间轮的起始时间
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(int wheelSize, double tickSeconds, double startTime) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickSeconds = tickSeconds;
+        this.mask = size - 1;
+        this.buckets = (Timeout<K, T>[]) new Timeout<?, ?>[size];
+        this.currentTick = tickOf(startTime);
+    }
+
+    /**
+     * 安排定时任务；若相同 key 已存在则替换
+     */
+    public void schedule(K key, T payload, double deadline) {
+        cancel(key);
+        long tick = Math.max(currentTick, tickOf(deadline));
+        Timeout<K, T> timeout = new Timeout<>(key, payload, deadline, tick, seq++);
+        int index = (int) (tick & mask);
+        timeout.next = buckets[index];
+        if (buckets[index] != null) {
+            buckets[index].prev = timeout;
+        }
+        buckets[index] = timeout;
+        timeouts.put(key, timeout);
+    }
+
+    public boolean cancel(K key) {
+        Timeout<K, T> timeout = timeouts.remove(key);
+        if (timeout == null) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    public boolean contains(K key) {
+        return timeouts.containsKey(key);
+    }
+
+    public int size() {
+        return timeouts.size();
+    }
+
+    public boolean isEmpty() {
+        return timeouts.isEmpty();
+    }
+
+    /**
+     * 最早到期任务的到期时间；没有任务时返回 {@link Double#NaN}。
+     * 从当前 tick 起最多扫描一圈槽，只有全部任务都在一圈之外时才遍历所有任务。
+     */
+    public double nextDeadline() {
+        if (timeouts.isEmpty()) {
+            return Double.NaN;
+        }
+        for (long tick = currentTick; tick <= currentTick + mask; tick++) {
+            double earliest = Double.NaN;
+            for (Timeout<K, T> t = buckets[(int) (tick & mask)]; t != null; t = t.next) {
+                if (t.tick == tick && (Double.isNaN(earliest) || t.deadline < earliest)) {
+                    earliest = t.deadline;
+                }
+            }
+            if (!Double.isNaN(earliest)) {
+                return earliest;
+            }
+        }
+        double earliest = Double.NaN;
+        for (Timeout<K, T> t : timeouts.values()) {
+            if (Double.isNaN(earliest) || t.deadline < earliest) {
+                earliest = t.deadline;
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * 推进到时间 now，对所有到期（deadline <= now）的任务按到期顺序回调
+     */
+    public void advance(double now, Consumer<T> onExpire) {
+        long targetTick = Math.max(currentTick, tickOf(now));
+        List<Timeout<K, T>> expired = new ArrayList<>();
+        // 跨越超过一圈时每个槽只需检查一次
+        long last = Math.min(targetTick, currentTick + mask);
+        for (long tick = currentTick; tick <= last; tick++) {
+            Timeout<K, T> t = buckets[(int) (tick & mask)];
+            while (t != null) {
+                Timeout<K, T> next = t.next;
+                if (t.tick <= targetTick && t.deadline <= now) {
+                    timeouts.remove(t.key);
+                    unlink(t);
+                    expired.add(t);
+                }
+                t = next;
+            }
+        }
+        currentTick = targetTick;
+        expired.sort(EXPIRY_ORDER);
+        for (Timeout<K, T> t : expired) {
+            onExpire.accept(t.payload);
+        }
+    }
+
+    private long tickOf(double time) {
+        return (long) Math.floor(time / tickSeconds);
+    }
+
+    private void unlink(Timeout<K, T> timeout) {
+        int index = (int) (timeout.tick & mask);
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else if (buckets[index] == timeout) {
+            buckets[index] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+    }
+}
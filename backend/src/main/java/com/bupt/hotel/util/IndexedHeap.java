@@ -0,0 +1,156 @@
+package com.bupt.hotel.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 带索引的二叉堆：堆顶为 comparator 意义下的最小元素。
+ * 通过 key 记录每个元素在数组中的下标，支持 O(log n) 的按 key 删除与原地调整（update）。
+ *
+ * 注意：元素的排序字段被修改后，调用方必须调用 {@link #update(Object)} 重新调整位置。
+ * 非线程安全，由调用方（调度器）保证单线程访问。
+ */
+public class IndexedHeap<K, E> {
+
+    private final Comparator<? super E> comparator;
+    private final Function<? super E, ? extends K> keyFn;
+    private final Map<K, Integer> positions = new HashMap<>();
+    private final List<E> heap = new ArrayList<>();
+
+    public IndexedHeap(Comparator<? super E> comparator, Function<? super E, ? extends K> keyFn) {
+        this.comparator = comparator;
+        this.keyFn = keyFn;
+    }
+
+    /**
+     * 插入元素；若相同 key 已存在则替换并重新调整位置
+     */
+    public void offer(E element) {
+        K key = keyFn.apply(element);
+        Integer pos = positions.get(key);
+        if (pos != null) {
+            heap.set(pos, element);
+            siftUp(pos);
+            siftDown(positions.get(key));
+            return;
+        }
+        heap.add(element);
+        positions.put(key, heap.size() - 1);
+        siftUp(heap.size() - 1);
+    }
+
+    public E peek() {
+        return heap.isEmpty() ? null : heap.get(0);
+    }
+
+    public E poll() {
+        if (heap.isEmpty()) {
+            return null;
+        }
+        E top = heap.get(0);
+        removeAt(0);
+        return top;
+    }
+
+    public E remove(K key) {
+        Integer pos = positions.get(key);
+        if (pos == null) {
+            return null;
+        }
+        E element = heap.get(pos);
+        removeAt(pos);
+        return element;
+    }
+
+    /**
+     * 元素的排序字段发生变化后调用，重新调整其在堆中的位置
+     */
+    public void update(K key) {
+        Integer pos = positions.get(key);
+        if (pos == null) {
+            return;
+        }
+        siftUp(pos);
+        siftDown(positions.get(key));
+    }
+
+    public E get(K key) {
+        Integer pos = positions.get(key);
+        return pos == null ? null : heap.get(pos);
+    }
+
+    public boolean contains(K key) {
+        return positions.containsKey(key);
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    public boolean isEmpty() {
+        return heap.isEmpty();
+    }
+
+    public void clear() {
+        heap.clear();
+        positions.clear();
+    }
+
+    private void removeAt(int pos) {
+        int last = heap.size() - 1;
+        E removed = heap.get(pos);
+        positions.remove(keyFn.apply(removed));
+        if (pos == last) {
+            heap.remove(last);
+            return;
+        }
+        E moved = heap.remove(last);
+        heap.set(pos, moved);
+        positions.put(keyFn.apply(moved), pos);
+        siftUp(pos);
+        siftDown(positions.get(keyFn.apply(moved)));
+    }
+
+    private void siftUp(int pos) {
+        E element = heap.get(pos);
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            E p = heap.get(parent);
+            if (comparator.compare(element, p) >= 0) {
+                break;
+            }
+            place(pos, p);
+            pos = parent;
+        }
+        place(pos, element);
+    }
+
+    private void siftDown(int pos) {
+        int size = heap.size();
+        E element = heap.get(pos);
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && comparator.compare(heap.get(right), heap.get(child)) < 0) {
+                child = right;
+            }
+            E c = heap.get(child);
+            if (comparator.compare(element, c) <= 0) {
+                break;
+            }
+            place(pos, c);
+            pos = child;
+        }
+        place(pos, element);
+    }
+
+    private void place(int pos, E element) {
+        heap.set(pos, element);
+        positions.put(keyFn.apply(element), pos);
+    }
+}
@@ -0,0 +1,92 @@
+package com.bupt.hotel.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 以稠密 int 序号（0 ~ capacity-1）为键的映射，值存放在按序号索引的数组中。
+ * 另外维护一个紧凑的已占用序号列表，写线程遍历时只访问已有元素，不分配迭代器。
+ *
+ * 单写者：put / remove、{@link #ordinalAt(int)} 遍历与 {@link #values()} 只能由同一个线程调用；
+ * get / containsKey / size 可由其他线程并发读取。
+ */
+public class OrdinalMap<V> {
+
+    private final AtomicReferenceArray<V> values;
+    // 已占用的序号（紧凑存放，删除时用末尾元素填补）
+    private final int[] packed;
+    // 序号 -> 在 packed 中的位置，未占用为 -1
+    private final int[] slotOf;
+    private volatile int size;
+
+    public OrdinalMap(int capacity) {
+        this.values = new AtomicReferenceArray<>(capacity);
+        this.packed = new int[capacity];
+        this.slotOf = new int[capacity];
+        Arrays.fill(slotOf, -1);
+    }
+
+    public V get(int ordinal) {
+        return values.get(ordinal);
+    }
+
+    public boolean containsKey(int ordinal) {
+        return values.get(ordinal) != null;
+    }
+
+    /**
+     * 放入元素（不允许为 null），返回该序号原有的元素
+     */
+    public V put(int ordinal, V value) {
+        V previous = values.getAndSet(ordinal, value);
+        if (previous == null) {
+            slotOf[ordinal] = size;
+            packed[size] = ordinal;
+            size = size + 1;
+        }
+        return previous;
+    }
+
+    public V remove(int ordinal) {
+        V previous = values.getAndSet(ordinal, null);
+        if (previous != null) {
+            int slot = slotOf[ordinal];
+            int last = packed[size - 1];
+            packed[slot] = last;
+            slotOf[last] = slot;
+            slotOf[ordinal] = -1;
+            size = size - 1;
+        }
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 第 index 个已占用的序号（0 <= index < size）。遍历期间只允许删除当前元素，
+     * 且需从 size-1 向 0 倒序遍历（删除时由已遍历过的末尾元素填补当前位置）
+     */
+    public int ordinalAt(int index) {
+        return packed[index];
+    }
+
+    /**
+     * 当前所有元素的快照（不保证顺序），只访问已占用的序号
+     */
+    public List<V> values() {
+        int n = size;
+        List<V> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(values.get(packed[i]));
+        }
+        return result;
+    }
+}
@@ -40,6 +40,10 @@ CREATE TABLE IF NOT EXISTS `billing_detail` (
     `cumulative_fee` DOUBLE NOT NULL COMMENT '截至本次的累积费用',
     `billing_record_id` BIGINT COMMENT '关联的账单ID'
 );
+-- 详单主键序列：步长 50，写回线程每取一次序列值分配一段 ID（与 BillingDetail 的 allocationSize 一致）
+CREATE SEQUENCE IF NOT EXISTS `billing_detail_seq` START WITH 1 INCREMENT BY 50;
+-- 非内存库中已有详单时，从最大 ID 之后重新开始（启动时写回线程尚未取段，未使用的段不会被重复分配）
+ALTER SEQUENCE `billing_detail_seq` RESTART WITH (SELECT COALESCE(MAX(`id`), 0) + 1 FROM `billing_detail`);
 -- 住宿费账单表
 CREATE TABLE IF NOT EXISTS `lodging_bill` (
     `id` BIGINT AUTO_INCREMENT PRIMARY KEY,
@@ -0,0 +1,128 @@
+package com.bupt.hotel.service;
+
+import com.bupt.hotel.entity.FanSpeed;
+import com.bupt.hotel.service.SchedulerService.ServiceUnit;
+import com.bupt.hotel.service.SchedulerService.WaitingInfo;
+import com.bupt.hotel.util.IndexedHeap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 受害者/等待者选取的微基准：原实现每次对整个队列按比较器排序后取第一个，现实现在带索引的堆上调整后取堆顶。
+ * 每次操作模拟一次调度步骤：
+ * - victim: 一个服务对象的服务时长增加后，选出最先被抢占的服务对象
+ * - allocation: 取出最先获得服务的等待者，再以新的入队时间重新加入等待队列
+ *
+ * 运行: mvn -Pjmh test-compile exec:exec
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchedulerQueueBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    private int queueSize;
+
+    private final FanSpeed[] speeds = FanSpeed.values();
+
+    private Map<String, ServiceUnit> serviceQueue;
+    private IndexedHeap<String, ServiceUnit> victimHeap;
+    private List<ServiceUnit> serviceUnits;
+
+    private Map<String, WaitingInfo> waitingQueue;
+    private IndexedHeap<String, WaitingInfo> allocationHeap;
+
+    private Random random;
+    private double clock;
+
+    @Setup
+    public void setup() {
+        random = new Random(42);
+        serviceQueue = new HashMap<>();
+        victimHeap = new IndexedHeap<>(SchedulerShard.VICTIM_ORDER, ServiceUnit::getRoomId);
+        serviceUnits = new ArrayList<>(queueSize);
+        waitingQueue = new HashMap<>();
+        allocationHeap = new IndexedHeap<>(SchedulerShard.ALLOCATION_ORDER, WaitingInfo::getRoomId);
+        for (int i = 0; i < queueSize; i++) {
+            ServiceUnit unit = new ServiceUnit();
+            unit.setRoomId(String.format("s%06d", i));
+            unit.setRoomOrdinal(i);
+            unit.setFanSpeed(speeds[random.nextInt(speeds.length)]);
+            unit.setServedDurationSeconds(random.nextInt(3600));
+            serviceQueue.put(unit.getRoomId(), unit);
+            victimHeap.offer(unit);
+            serviceUnits.add(unit);
+
+            WaitingInfo waiter = new WaitingInfo();
+            waiter.setRoomId(String.format("w%06d", i));
+            waiter.setRoomOrdinal(i);
+            waiter.setFanSpeed(speeds[random.nextInt(speeds.length)]);
+            waiter.setPriorityBoosted(random.nextInt(4) == 0);
+            waiter.setEnqueuedAt(i);
+            waitingQueue.put(waiter.getRoomId(), waiter);
+            allocationHeap.offer(waiter);
+        }
+        clock = queueSize;
+    }
+
+    @Benchmark
+    public ServiceUnit victimSort() {
+        advanceServedDuration();
+        List<ServiceUnit> sorted = serviceQueue.values().stream()
+                .sorted(SchedulerShard.VICTIM_ORDER)
+                .toList();
+        return sorted.get(0);
+    }
+
+    @Benchmark
+    public ServiceUnit victimHeap() {
+        ServiceUnit unit = advanceServedDuration();
+        victimHeap.update(unit.getRoomId());
+        return victimHeap.peek();
+    }
+
+    @Benchmark
+    public WaitingInfo allocationSort() {
+        List<WaitingInfo> sorted = waitingQueue.values().stream()
+                .sorted(SchedulerShard.ALLOCATION_ORDER)
+                .toList();
+        WaitingInfo next = sorted.get(0);
+        waitingQueue.remove(next.getRoomId());
+        next.setEnqueuedAt(++clock);
+        waitingQueue.put(next.getRoomId(), next);
+        return next;
+    }
+
+    @Benchmark
+    public WaitingInfo allocationHeap() {
+        WaitingInfo next = allocationHeap.poll();
+        next.setEnqueuedAt(++clock);
+        allocationHeap.offer(next);
+        return next;
+    }
+
+    private ServiceUnit advanceServedDuration() {
+        ServiceUnit unit = serviceUnits.get(random.nextInt(serviceUnits.size()));
+        unit.setServedDurationSeconds(unit.getServedDurationSeconds() + 1);
+        return unit;
+    }
+}
@@ -0,0 +1,130 @@
+package com.bupt.hotel.service;
+
+import com.bupt.hotel.entity.FanSpeed;
+import com.bupt.hotel.service.SchedulerService.ServiceUnit;
+import com.bupt.hotel.service.SchedulerService.WaitingInfo;
+import com.bupt.hotel.util.IndexedHeap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 堆与原排序路径的一致性：对服务队列/等待队列做随机的加入、移除与排序字段修改，
+ * 每一步比较堆顶与"对整个队列按同一比较器排序后取第一个"的结果，最后依次弹出并与完整排序结果比较。
+ */
+class SchedulerQueueOrderTest {
+
+    private static final FanSpeed[] SPEEDS = FanSpeed.values();
+    private static final int ROOMS = 64;
+    private static final int STEPS = 20_000;
+
+    @Test
+    void victimHeapMatchesSortedServiceQueue() {
+        for (long seed = 1; seed <= 5; seed++) {
+            Random random = new Random(seed);
+            check(random, SchedulerShard.VICTIM_ORDER, ServiceUnit::getRoomId,
+                    ordinal -> randomService(random, ordinal),
+                    unit -> {
+                        if (random.nextBoolean()) {
+                            unit.setServedDurationSeconds(unit.getServedDurationSeconds() + random.nextInt(120));
+                        } else {
+                            unit.setFanSpeed(SPEEDS[random.nextInt(SPEEDS.length)]);
+                        }
+                    });
+        }
+    }
+
+    @Test
+    void allocationHeapMatchesSortedWaitingQueue() {
+        for (long seed = 1; seed <= 5; seed++) {
+            Random random = new Random(seed);
+            check(random, SchedulerShard.ALLOCATION_ORDER, WaitingInfo::getRoomId,
+                    ordinal -> randomWaiter(random, ordinal), waiter -> mutateWaiter(random, waiter));
+        }
+    }
+
+    @Test
+    void preemptorHeapMatchesSortedWaitingQueue() {
+        for (long seed = 1; seed <= 5; seed++) {
+            Random random = new Random(seed);
+            check(random, SchedulerShard.PREEMPTOR_ORDER, WaitingInfo::getRoomId,
+                    ordinal -> randomWaiter(random, ordinal), waiter -> mutateWaiter(random, waiter));
+        }
+    }
+
+    private static <E> void check(Random random, Comparator<E> order, Function<E, String> key,
+                                  Function<Integer, E> create, Consumer<E> mutate) {
+        IndexedHeap<String, E> heap = new IndexedHeap<>(order, key);
+        // 原实现的队列：roomId -> 元素，选取时整体排序
+        Map<String, E> queue = new LinkedHashMap<>();
+        for (int step = 0; step < STEPS; step++) {
+            int ordinal = random.nextInt(ROOMS);
+            String roomId = roomIdOf(ordinal);
+            int action = random.nextInt(4);
+            if (action == 0) {
+                E removed = queue.remove(roomId);
+                assertSame(removed, heap.remove(roomId));
+            } else if (action == 1 && queue.containsKey(roomId)) {
+                E element = queue.get(roomId);
+                mutate.accept(element);
+                heap.update(roomId);
+            } else {
+                E element = create.apply(ordinal);
+                queue.put(roomId, element);
+                heap.offer(element);
+            }
+            assertEquals(queue.size(), heap.size());
+            assertSame(sorted(queue, order).stream().findFirst().orElse(null), heap.peek(), "step " + step);
+        }
+        List<E> expected = sorted(queue, order);
+        List<E> polled = new ArrayList<>();
+        while (!heap.isEmpty()) {
+            polled.add(heap.poll());
+        }
+        assertEquals(expected, polled);
+    }
+
+    private static <E> List<E> sorted(Map<String, E> queue, Comparator<E> order) {
+        return queue.values().stream().sorted(order).toList();
+    }
+
+    // 序号按房间号字典序分配，与 RoomRegistry 一致
+    private static String roomIdOf(int ordinal) {
+        return String.format("%d%02d", ordinal / 10 + 1, ordinal % 10 + 1);
+    }
+
+    private static ServiceUnit randomService(Random random, int ordinal) {
+        ServiceUnit unit = new ServiceUnit();
+        unit.setRoomId(roomIdOf(ordinal));
+        unit.setRoomOrdinal(ordinal);
+        unit.setFanSpeed(SPEEDS[random.nextInt(SPEEDS.length)]);
+        // 取值范围小，制造大量相同服务时长，覆盖按房间号排序的分支
+        unit.setServedDurationSeconds(random.nextInt(8) * 60L);
+        return unit;
+    }
+
+    private static WaitingInfo randomWaiter(Random random, int ordinal) {
+        WaitingInfo waiter = new WaitingInfo();
+        waiter.setRoomId(roomIdOf(ordinal));
+        waiter.setRoomOrdinal(ordinal);
+        waiter.setFanSpeed(SPEEDS[random.nextInt(SPEEDS.length)]);
+        waiter.setPriorityBoosted(random.nextInt(4) == 0);
+        waiter.setEnqueuedAt(random.nextInt(8) * 30.0);
+        return waiter;
+    }
+
+    private static void mutateWaiter(Random random, WaitingInfo waiter) {
+        // 运行中只有时间片到期会修改等待者的排序字段（提升优先级）
+        waiter.setPriorityBoosted(!waiter.isPriorityBoosted());
+    }
+}
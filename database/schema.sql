@@ -38,6 +38,18 @@ CREATE TABLE IF NOT EXISTS `billing_detail` (
     `cumulative_fee` DOUBLE NOT NULL COMMENT '截至本次的累积费用',
     `billing_record_id` BIGINT COMMENT '关联的账单ID'
 ) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+-- 详单主键序列：MySQL 不支持序列，使用单行表模拟（与 Hibernate 的序列模拟表结构相同）。
+-- 步长 50，写回线程每次取一段 ID（与 BillingDetail 的 allocationSize 一致）。
+-- 已有详单（自增主键写入的旧数据）时从最大 ID 之后开始，避免分配到已存在的主键
+CREATE TABLE IF NOT EXISTS `billing_detail_seq` (
+    `next_val` BIGINT NOT NULL COMMENT '下一段 ID 的起始值'
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+INSERT INTO `billing_detail_seq` (`next_val`)
+SELECT `seed`.`next_val`
+FROM (SELECT COALESCE(MAX(`id`), 0) + 1 AS `next_val` FROM `billing_detail`) AS `seed`
+WHERE NOT EXISTS (SELECT 1 FROM `billing_detail_seq`);
+UPDATE `billing_detail_seq`
+SET `next_val` = GREATEST(`next_val`, (SELECT COALESCE(MAX(`id`), 0) + 1 FROM `billing_detail`));
 -- 住宿费账单表
 CREATE TABLE IF NOT EXISTS `lodging_bill` (
     `id` BIGINT AUTO_INCREMENT PRIMARY KEY,
@@ -0,0 +1,54 @@
+import api from './index'
+
+// 看板推送流 (/manager/stream)：首条事件为完整快照，之后为带版本号的增量。
+// 在本地维护房间与队列的最新状态，每次更新后回调 onUpdate({ rooms, serviceQueue, waitingQueue })。
+// 浏览器不支持 EventSource 时返回 null，调用方继续使用轮询。
+export function openDashboardStream(onUpdate) {
+  if (typeof EventSource === 'undefined') {
+    return null;
+  }
+  const source = new EventSource(`${api.defaults.baseURL}/manager/stream`);
+  let version = -1;
+  let rooms = new Map();
+  let serviceQueue = {};
+  let waitingQueue = {};
+
+  const emit = () => {
+    onUpdate({
+      rooms: Array.from(rooms.values()),
+      serviceQueue: { ...serviceQueue },
+      waitingQueue: { ...waitingQueue },
+    });
+  };
+
+  source.addEventListener('snapshot', (e) => {
+    const data = JSON.parse(e.data);
+    version = data.version;
+    rooms = new Map(data.rooms.map((room) => [room.roomId, room]));
+    serviceQueue = data.serviceQueue;
+    waitingQueue = data.waitingQueue;
+    emit();
+  });
+
+  source.addEventListener('delta', (e) => {
+    const data = JSON.parse(e.data);
+    if (version < 0 || data.version <= version) {
+      // 尚未收到快照或重复的版本
+      return;
+    }
+    version = data.version;
+    data.rooms.forEach((room) => rooms.set(room.roomId, room));
+    Object.assign(serviceQueue, data.serviceQueue);
+    Object.assign(waitingQueue, data.waitingQueue);
+    data.removedService.forEach((roomId) => delete serviceQueue[roomId]);
+    data.removedWaiting.forEach((roomId) => delete waitingQueue[roomId]);
+    emit();
+  });
+
+  // 断线后 EventSource 自动重连，服务端会重新发送快照
+  source.onerror = () => {
+    version = -1;
+  };
+
+  return source;
+}
@@ -0,0 +1,103 @@
+#!/usr/bin/env python3
+# -*- coding: utf-8 -*-
+"""
+批量操作接口压测脚本（早高峰开机风暴）
+比较两种方式让全部房间开机、调整、再关机所需的时间：
+- single: 逐个调用 /api/guest/powerOn、/changeState、/powerOff（每个操作一次往返）
+- batch: 每一步把全部房间的操作放进一次 /api/guest/batch 请求
+
+每轮结束后打印服务队列/等待队列的大小，两种方式的调度结果应一致。
+
+注意：
+- 脚本会为参与压测的房间办理入住（不结账），结束时关机
+- 请使用独立的测试环境运行，避免影响正在进行的验收测试
+"""
+
+import argparse
+import random
+import statistics
+import time
+
+import requests
+
+API_BASE_URL = "http://localhost:8080/api"
+
+FAN_SPEEDS = ["LOW", "MIDDLE", "HIGH"]
+
+
+def all_room_ids():
+    # 4 层，每层 10 间（与 RoomInitService 一致）
+    return [f"{floor}{num:02d}" for floor in range(1, 5) for num in range(1, 11)]
+
+
+def plan(rooms, seed):
+    # 每轮：全部开机 -> 全部调整 -> 全部关机，风速随机但两种方式使用同一序列
+    rnd = random.Random(seed)
+    power_on = [{"op": "powerOn", "roomId": r, "mode": "COOL", "targetTemp": 22,
+                 "fanSpeed": rnd.choice(FAN_SPEEDS)} for r in rooms]
+    change = [{"op": "changeState", "roomId": r, "targetTemp": rnd.choice([20, 24]),
+               "fanSpeed": rnd.choice(FAN_SPEEDS)} for r in rooms]
+    power_off = [{"op": "powerOff", "roomId": r} for r in rooms]
+    return [("powerOn", power_on), ("changeState", change), ("powerOff", power_off)]
+
+
+def run_single(session, base_url, operations):
+    failures = 0
+    for op in operations:
+        body = {k: v for k, v in op.items() if k != "op"}
+        if op["op"] == "powerOff":
+            res = session.post(f"{base_url}/guest/powerOff", params={"roomId": op["roomId"]})
+        else:
+            res = session.post(f"{base_url}/guest/{op['op']}", json=body)
+        if res.status_code != 200:
+            failures += 1
+    return failures
+
+
+def run_batch(session, base_url, operations):
+    res = session.post(f"{base_url}/guest/batch", json=operations)
+    res.raise_for_status()
+    return sum(1 for r in res.json() if not r["success"])
+
+
+def queue_sizes(session, base_url):
+    snapshot = session.get(f"{base_url}/monitor/snapshot").json()
+    return len(snapshot["serviceQueue"]), len(snapshot["waitingQueue"])
+
+
+def main():
+    parser = argparse.ArgumentParser(description="批量操作接口压测")
+    parser.add_argument("--base-url", default=API_BASE_URL)
+    parser.add_argument("--rooms", type=int, default=40, help="参与压测的房间数 (<=40)")
+    parser.add_argument("--rounds", type=int, default=5, help="每种方式执行的轮数")
+    args = parser.parse_args()
+
+    rooms = all_room_ids()[:args.rooms]
+    session = requests.Session()
+    for room_id in rooms:
+        session.post(f"{args.base_url}/clerk/checkin", json={"roomId": room_id, "customerName": f"bench-{room_id}"})
+
+    timings = {"single": {}, "batch": {}}
+    for mode, runner in (("single", run_single), ("batch", run_batch)):
+        for round_no in range(args.rounds):
+            for step, operations in plan(rooms, round_no):
+                began = time.perf_counter()
+                failures = runner(session, args.base_url, operations)
+                elapsed = (time.perf_counter() - began) * 1000.0
+                timings[mode].setdefault(step, []).append(elapsed)
+                if failures:
+                    print(f"[{mode}] 第 {round_no + 1} 轮 {step}: {failures} 个操作失败")
+                if step == "changeState":
+                    service, waiting = queue_sizes(session, args.base_url)
+                    print(f"[{mode}] 第 {round_no + 1} 轮调整后: 服务队列 {service}, 等待队列 {waiting}")
+
+    print("=" * 50)
+    print(f"{len(rooms)} 个房间，每步耗时中位数 (ms):")
+    for step in ("powerOn", "changeState", "powerOff"):
+        single = statistics.median(timings["single"][step])
+        batch = statistics.median(timings["batch"][step])
+        print(f"  {step:12s} single={single:8.1f}  batch={batch:8.1f}  加速 {single / batch if batch else 0:.1f}x")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,97 @@
+#!/usr/bin/env python3
+# -*- coding: utf-8 -*-
+"""
+调度命令突发压测脚本
+并发地向 /api/guest/changeState 发送大量调风/调温命令，统计吞吐量与延迟分位数，
+用于比较不同调度实现（例如基于 synchronized 的实现与单写者命令循环）在突发负载下的表现。
+
+注意：
+- 脚本会为参与压测的房间办理入住并开机，压测结束后关机（不结账）
+- 请使用独立的测试环境运行，避免影响正在进行的验收测试
+"""
+
+import argparse
+import random
+import statistics
+import time
+from concurrent.futures import ThreadPoolExecutor
+
+import requests
+
+API_BASE_URL = "http://localhost:8080/api"
+
+FAN_SPEEDS = ["LOW", "MIDDLE", "HIGH"]
+
+
+def all_room_ids():
+    # 4 层，每层 10 间（与 RoomInitService 一致）
+    return [f"{floor}{num:02d}" for floor in range(1, 5) for num in range(1, 11)]
+
+
+def percentile(sorted_values, p):
+    if not sorted_values:
+        return 0.0
+    k = max(0, min(len(sorted_values) - 1, int(round(p / 100.0 * len(sorted_values))) - 1))
+    return sorted_values[k]
+
+
+def prepare_rooms(session, base_url, rooms):
+    for room_id in rooms:
+        session.post(f"{base_url}/clerk/checkin",
+                     json={"roomId": room_id, "customerName": f"bench-{room_id}"})
+        session.post(f"{base_url}/guest/powerOn",
+                     json={"roomId": room_id, "mode": "COOL", "targetTemp": 22,
+                           "fanSpeed": random.choice(FAN_SPEEDS)})
+
+
+def power_off_rooms(session, base_url, rooms):
+    for room_id in rooms:
+        session.post(f"{base_url}/guest/powerOff", params={"roomId": room_id})
+
+
+def main():
+    parser = argparse.ArgumentParser(description="调度命令突发压测")
+    parser.add_argument("--base-url", default=API_BASE_URL)
+    parser.add_argument("--rooms", type=int, default=40, help="参与压测的房间数 (<=40)")
+    parser.add_argument("--commands", type=int, default=5000, help="发送的命令总数")
+    parser.add_argument("--concurrency", type=int, default=32, help="并发客户端数")
+    args = parser.parse_args()
+
+    rooms = all_room_ids()[:args.rooms]
+    setup = requests.Session()
+    print(f"准备 {len(rooms)} 个房间 ...")
+    prepare_rooms(setup, args.base_url, rooms)
+
+    def send(i):
+        session = requests.Session()
+        room_id = rooms[i % len(rooms)]
+        body = {"roomId": room_id,
+                "targetTemp": random.randint(18, 28),
+                "fanSpeed": random.choice(FAN_SPEEDS)}
+        start = time.perf_counter()
+        ok = True
+        try:
+            resp = session.post(f"{args.base_url}/guest/changeState", json=body, timeout=30)
+            ok = resp.status_code == 200
+        except requests.RequestException:
+            ok = False
+        return (time.perf_counter() - start) * 1000.0, ok
+
+    print(f"发送 {args.commands} 条命令，并发 {args.concurrency} ...")
+    began = time.perf_counter()
+    with ThreadPoolExecutor(max_workers=args.concurrency) as pool:
+        results = list(pool.map(send, range(args.commands)))
+    elapsed = time.perf_counter() - began
+
+    latencies = sorted(r[0] for r in results)
+    failures = sum(1 for r in results if not r[1])
+    print("=" * 50)
+    print(f"总耗时: {elapsed:.2f}s, 吞吐量: {args.commands / elapsed:.1f} cmd/s, 失败: {failures}")
+    print(f"延迟(ms): avg={statistics.mean(latencies):.1f} p50={percentile(latencies, 50):.1f} "
+          f"p90={percentile(latencies, 90):.1f} p99={percentile(latencies, 99):.1f} max={latencies[-1]:.1f}")
+
+    power_off_rooms(setup, args.base_url, rooms)
+
+
+if __name__ == "__main__":
+    main()
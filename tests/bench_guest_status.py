@@ -0,0 +1,172 @@
+#!/usr/bin/env python3
+# -*- coding: utf-8 -*-
+"""
+客房面板状态查询压测脚本
+模拟 N 个同时在线的客房面板查询 GET /api/guest/status，比较三种方式的请求量与延迟：
+- poll: 每个面板每秒无条件请求一次（原 GuestView 的做法）
+- conditional: 每秒请求一次，带 If-None-Match，状态无可见变化时服务端返回 304
+- longpoll: 带 If-None-Match 与 waitMs 的长轮询，状态变化时立即返回，超时返回 304
+
+统计：
+- 每秒请求数、200/304/错误数
+- poll/conditional 模式：单次请求延迟分位数
+- longpoll 模式：状态更新的送达次数，以及从“服务端状态变化”到面板收到的延迟（以开关机命令为变化源近似测量）
+
+注意：
+- 脚本会为 4 层 40 个房间办理入住（不结账）并开机其中一半，结束时关机
+- 面板按房间轮流分配（1000 个面板时每个房间约 25 个面板）
+- 请使用独立的测试环境运行，避免影响正在进行的验收测试
+"""
+
+import argparse
+import random
+import threading
+import time
+
+import requests
+
+API_BASE_URL = "http://localhost:8080/api"
+
+
+def all_room_ids():
+    # 4 层，每层 10 间（与 RoomInitService 一致）
+    return [f"{floor}{num:02d}" for floor in range(1, 5) for num in range(1, 11)]
+
+
+def percentile(sorted_values, p):
+    if not sorted_values:
+        return 0.0
+    k = max(0, min(len(sorted_values) - 1, int(round(p / 100.0 * len(sorted_values))) - 1))
+    return sorted_values[k]
+
+
+class Stats:
+    def __init__(self):
+        self.lock = threading.Lock()
+        self.codes = {}
+        self.errors = 0
+        self.latencies = []
+        self.updates = 0
+        self.update_delays = []
+
+
+class Panel(threading.Thread):
+    """一个客房面板：按指定方式循环查询本房间状态"""
+
+    def __init__(self, room_id, args, stats, stop, changes):
+        super().__init__(daemon=True)
+        self.room_id = room_id
+        self.args = args
+        self.stats = stats
+        self.stop = stop
+        self.changes = changes
+        self.session = requests.Session()
+        self.etag = None
+
+    def run(self):
+        # 错开启动时间，避免所有面板同时发出第一个请求
+        time.sleep(random.random() * self.args.interval)
+        while not self.stop.is_set():
+            params = {"roomId": self.room_id}
+            headers = {}
+            if self.args.mode != "poll" and self.etag:
+                headers["If-None-Match"] = self.etag
+            if self.args.mode == "longpoll":
+                params["waitMs"] = int(self.args.wait * 1000)
+            began = time.perf_counter()
+            try:
+                res = self.session.get(f"{self.args.base_url}/guest/status", params=params, headers=headers,
+                                       timeout=self.args.wait + 10)
+            except requests.RequestException:
+                with self.stats.lock:
+                    self.stats.errors += 1
+                time.sleep(1.0)
+                continue
+            now = time.perf_counter()
+            with self.stats.lock:
+                self.stats.codes[res.status_code] = self.stats.codes.get(res.status_code, 0) + 1
+                if self.args.mode != "longpoll":
+                    self.stats.latencies.append((now - began) * 1000.0)
+                elif res.status_code == 200 and self.etag is not None:
+                    self.stats.updates += 1
+                    changed_at = self.changes.get(self.room_id)
+                    if changed_at is not None and changed_at >= began:
+                        self.stats.update_delays.append((now - changed_at) * 1000.0)
+            if res.status_code == 200:
+                self.etag = res.headers.get("ETag")
+            if self.args.mode != "longpoll":
+                delay = self.args.interval - (time.perf_counter() - began)
+                if delay > 0:
+                    time.sleep(delay)
+
+
+def main():
+    parser = argparse.ArgumentParser(description="客房面板状态查询压测")
+    parser.add_argument("--base-url", default=API_BASE_URL)
+    parser.add_argument("--panels", type=int, default=1000, help="同时在线的面板数")
+    parser.add_argument("--mode", choices=["poll", "conditional", "longpoll"], default="longpoll")
+    parser.add_argument("--interval", type=float, default=1.0, help="poll/conditional 模式的请求间隔（秒）")
+    parser.add_argument("--wait", type=float, default=25.0, help="longpoll 模式的最长挂起时间（秒）")
+    parser.add_argument("--duration", type=float, default=30.0, help="压测时长（秒）")
+    parser.add_argument("--toggle-interval", type=float, default=1.0, help="每隔多少秒对一个随机房间开/关机")
+    args = parser.parse_args()
+
+    rooms = all_room_ids()
+    setup = requests.Session()
+    print(f"为 {len(rooms)} 个房间办理入住并开机其中一半 ...")
+    powered = set()
+    for i, room_id in enumerate(rooms):
+        setup.post(f"{args.base_url}/clerk/checkin", json={"roomId": room_id, "customerName": f"bench-{room_id}"})
+        if i % 2 == 0:
+            setup.post(f"{args.base_url}/guest/powerOn",
+                       json={"roomId": room_id, "mode": "COOL", "targetTemp": 22, "fanSpeed": "MIDDLE"})
+            powered.add(room_id)
+
+    stats = Stats()
+    stop = threading.Event()
+    changes = {}
+    panels = [Panel(rooms[i % len(rooms)], args, stats, stop, changes) for i in range(args.panels)]
+    print(f"{len(panels)} 个面板，模式 {args.mode}，持续 {args.duration:.0f}s ...")
+    for panel in panels:
+        panel.start()
+
+    began = time.perf_counter()
+    while time.perf_counter() - began < args.duration:
+        time.sleep(args.toggle_interval)
+        room_id = random.choice(rooms)
+        changes[room_id] = time.perf_counter()
+        if room_id in powered:
+            setup.post(f"{args.base_url}/guest/powerOff", params={"roomId": room_id})
+            powered.discard(room_id)
+        else:
+            setup.post(f"{args.base_url}/guest/powerOn",
+                       json={"roomId": room_id, "mode": "COOL", "targetTemp": 22, "fanSpeed": "MIDDLE"})
+            powered.add(room_id)
+    stop.set()
+    elapsed = time.perf_counter() - began
+
+    with stats.lock:
+        codes = dict(stats.codes)
+        latencies = sorted(stats.latencies)
+        update_delays = sorted(stats.update_delays)
+        updates = stats.updates
+        errors = stats.errors
+    total = sum(codes.values())
+
+    print("=" * 50)
+    print(f"请求数: {total}, 吞吐量: {total / elapsed:.1f} req/s, 状态码: {codes}, 错误: {errors}")
+    if latencies:
+        print(f"请求延迟(ms): p50={percentile(latencies, 50):.1f} p90={percentile(latencies, 90):.1f} "
+              f"p99={percentile(latencies, 99):.1f} max={latencies[-1]:.1f}")
+    if args.mode == "longpoll":
+        print(f"送达的状态更新: {updates}")
+        if update_delays:
+            print(f"开关机→面板收到(ms): p50={percentile(update_delays, 50):.1f} "
+                  f"p99={percentile(update_delays, 99):.1f} max={update_delays[-1]:.1f}")
+
+    for room_id in powered:
+        setup.post(f"{args.base_url}/guest/powerOff", params={"roomId": room_id})
+
+
+if __name__ == "__main__":
+    main()
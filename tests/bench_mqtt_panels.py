@@ -0,0 +1,234 @@
+#!/usr/bin/env python3
+# -*- coding: utf-8 -*-
+"""
+MQTT 房间面板负载生成脚本
+模拟 N 个房间控制面板：每个面板通过 hotel/ac/room/{id}/command 发送 POWER_ON / CHANGE_STATE / POWER_OFF，
+同时订阅本房间的状态主题 hotel/ac/room/{id}/status。统计命令发出到状态中体现该命令的端到端延迟分位数，
+以及命令与状态消息的吞吐量。
+
+延迟的计算方式：
+- 每条命令记录发出时刻与期望在状态中看到的结果（开关机状态、目标温度、风速）
+- 收到状态消息时，找到该房间最后一条已体现的命令，记录其延迟；在它之前、尚未体现的命令被服务端合并（防抖），
+  计为“被合并”
+- 压测结束后仍未体现的命令计为“未确认”
+
+注意：
+- 脚本会为参与压测的房间办理入住（不结账），结束时通过 MQTT 关机
+- 服务端建议使用 local-broker profile 启动（进程内 Broker）：
+  java -jar hotel-backend.jar --spring.profiles.active=local-broker
+- 请使用独立的测试环境运行，避免影响正在进行的验收测试
+"""
+
+import argparse
+import json
+import random
+import struct
+import threading
+import time
+
+import paho.mqtt.client as mqtt
+import requests
+
+API_BASE_URL = "http://localhost:8080/api"
+BROKER_HOST = "127.0.0.1"
+BROKER_PORT = 1883
+TOPIC_PREFIX = "hotel/ac/room/"
+
+FAN_SPEEDS = ["LOW", "MIDDLE", "HIGH"]
+# 二进制状态负载中的枚举序号（与 FanSpeed 枚举声明顺序一致）
+BINARY_FAN_SPEEDS = ["HIGH", "MIDDLE", "LOW"]
+COOL_TARGETS = list(range(18, 29))
+
+
+def all_room_ids():
+    # 4 层，每层 10 间（与 RoomInitService 一致）
+    return [f"{floor}{num:02d}" for floor in range(1, 5) for num in range(1, 11)]
+
+
+def percentile(sorted_values, p):
+    if not sorted_values:
+        return 0.0
+    k = max(0, min(len(sorted_values) - 1, int(round(p / 100.0 * len(sorted_values))) - 1))
+    return sorted_values[k]
+
+
+def new_client(client_id):
+    # 兼容 paho-mqtt 1.x 与 2.x
+    try:
+        return mqtt.Client(mqtt.CallbackAPIVersion.VERSION1, client_id=client_id)
+    except AttributeError:
+        return mqtt.Client(client_id=client_id)
+
+
+def decode_status(payload):
+    """解析状态消息，返回 (isOn, targetTemp, fanSpeed)；支持 JSON 与 binary 两种负载格式"""
+    if payload[:1] == b"{":
+        room = json.loads(payload)
+        return room.get("isOn"), room.get("targetTemp"), room.get("fanSpeed")
+    # binary v1: 版本, status, mode, fanSpeed, 标志位, currentTemp, targetTemp, 会话费用, 累计费用
+    _, _, _, fan, flags, _, target, _, _ = struct.unpack(">BBBBBhhii", payload[:17])
+    fan_speed = BINARY_FAN_SPEEDS[fan] if fan < len(BINARY_FAN_SPEEDS) else None
+    target_temp = None if target == -32768 else target / 100.0
+    return bool(flags & 1), target_temp, fan_speed
+
+
+class Stats:
+    def __init__(self):
+        self.lock = threading.Lock()
+        self.sent = {"POWER_ON": 0, "CHANGE_STATE": 0, "POWER_OFF": 0}
+        self.status_messages = 0
+        self.latencies = []
+        self.superseded = 0
+
+
+class Panel:
+    """一个房间控制面板：独立的 MQTT 连接，发送命令并订阅本房间状态"""
+
+    def __init__(self, room_id, args, stats):
+        self.room_id = room_id
+        self.stats = stats
+        self.lock = threading.Lock()
+        # (发出时刻, 期望的 isOn, 期望的目标温度, 期望的风速)，None 表示不检查
+        self.pending = []
+        self.is_on = False
+        self.target = 25
+        self.fan = "MIDDLE"
+        self.client = new_client(f"panel-{room_id}-{random.randint(0, 1 << 30)}")
+        self.client.on_message = self.on_message
+        self.client.connect(args.broker_host, args.broker_port, keepalive=60)
+        self.client.subscribe(f"{TOPIC_PREFIX}{room_id}/status", qos=0)
+        self.client.loop_start()
+
+    def send(self, command, expect_on, expect_target=None, expect_fan=None):
+        command["roomId"] = self.room_id
+        with self.lock:
+            self.pending.append((time.perf_counter(), expect_on, expect_target, expect_fan))
+        self.client.publish(f"{TOPIC_PREFIX}{self.room_id}/command", json.dumps(command), qos=0)
+        with self.stats.lock:
+            self.stats.sent[command["type"]] += 1
+
+    def next_command(self, power_off_prob):
+        if not self.is_on:
+            self.is_on = True
+            self.send({"type": "POWER_ON", "mode": "COOL", "targetTemp": self.target, "fanSpeed": self.fan},
+                      True, self.target, self.fan)
+        elif random.random() < power_off_prob:
+            self.is_on = False
+            self.send({"type": "POWER_OFF"}, False)
+        else:
+            # 每次都改变目标温度或风速，保证状态中可以观察到该命令
+            if random.random() < 0.5:
+                self.target = random.choice([t for t in COOL_TARGETS if t != self.target])
+            else:
+                self.fan = random.choice([f for f in FAN_SPEEDS if f != self.fan])
+            self.send({"type": "CHANGE_STATE", "targetTemp": self.target, "fanSpeed": self.fan},
+                      True, self.target, self.fan)
+
+    def on_message(self, client, userdata, msg):
+        now = time.perf_counter()
+        try:
+            is_on, target, fan = decode_status(msg.payload)
+        except (ValueError, struct.error):
+            return
+        with self.lock:
+            matched = -1
+            for i, (_, expect_on, expect_target, expect_fan) in enumerate(self.pending):
+                if expect_on != is_on:
+                    continue
+                if expect_target is not None and (target is None or abs(expect_target - target) > 0.005):
+                    continue
+                if expect_fan is not None and expect_fan != fan:
+                    continue
+                matched = i
+            confirmed = self.pending[matched] if matched >= 0 else None
+            if confirmed is not None:
+                self.pending = self.pending[matched + 1:]
+        with self.stats.lock:
+            self.stats.status_messages += 1
+            if confirmed is not None:
+                self.stats.latencies.append((now - confirmed[0]) * 1000.0)
+                self.stats.superseded += matched
+
+    def unconfirmed(self):
+        with self.lock:
+            return len(self.pending)
+
+    def close(self):
+        self.client.loop_stop()
+        self.client.disconnect()
+
+
+def print_server_stats(base_url):
+    for path in ("/manager/mqtt", "/manager/mqtt/commands"):
+        try:
+            print(f"服务端 {path}: {requests.get(base_url + path, timeout=5).json()}")
+        except (requests.RequestException, ValueError):
+            pass
+
+
+def main():
+    parser = argparse.ArgumentParser(description="MQTT 房间面板负载生成")
+    parser.add_argument("--base-url", default=API_BASE_URL)
+    parser.add_argument("--broker-host", default=BROKER_HOST)
+    parser.add_argument("--broker-port", type=int, default=BROKER_PORT)
+    parser.add_argument("--panels", type=int, default=40, help="模拟的面板（房间）数 (<=40)")
+    parser.add_argument("--rate", type=float, default=2.0, help="每个面板每秒发送的命令数")
+    parser.add_argument("--duration", type=float, default=30.0, help="压测时长（秒）")
+    parser.add_argument("--power-off-prob", type=float, default=0.05, help="开机状态下发送 POWER_OFF 的概率")
+    parser.add_argument("--drain", type=float, default=5.0, help="停止发送后等待状态消息的时间（秒）")
+    args = parser.parse_args()
+
+    rooms = all_room_ids()[:args.panels]
+    setup = requests.Session()
+    print(f"为 {len(rooms)} 个房间办理入住 ...")
+    for room_id in rooms:
+        setup.post(f"{args.base_url}/clerk/checkin",
+                   json={"roomId": room_id, "customerName": f"bench-{room_id}"})
+
+    stats = Stats()
+    panels = [Panel(room_id, args, stats) for room_id in rooms]
+    time.sleep(1.0)
+
+    total_rate = args.rate * len(panels)
+    interval = 1.0 / total_rate if total_rate > 0 else args.duration
+    print(f"{len(panels)} 个面板，共 {total_rate:.1f} cmd/s，持续 {args.duration:.0f}s ...")
+    began = time.perf_counter()
+    next_at = began
+    while time.perf_counter() - began < args.duration:
+        random.choice(panels).next_command(args.power_off_prob)
+        next_at += interval
+        delay = next_at - time.perf_counter()
+        if delay > 0:
+            time.sleep(delay)
+    sending = time.perf_counter() - began
+    time.sleep(args.drain)
+    elapsed = time.perf_counter() - began
+
+    with stats.lock:
+        sent = dict(stats.sent)
+        latencies = sorted(stats.latencies)
+        status_messages = stats.status_messages
+        superseded = stats.superseded
+    unconfirmed = sum(panel.unconfirmed() for panel in panels)
+    total_sent = sum(sent.values())
+
+    print("=" * 50)
+    print(f"发送命令: {total_sent} ({', '.join(f'{k}={v}' for k, v in sent.items())}), "
+          f"吞吐量: {total_sent / sending:.1f} cmd/s")
+    print(f"收到状态消息: {status_messages}, 吞吐量: {status_messages / elapsed:.1f} msg/s")
+    print(f"已确认: {len(latencies)}, 被合并: {superseded}, 未确认: {unconfirmed}")
+    if latencies:
+        print(f"命令→状态延迟(ms): p50={percentile(latencies, 50):.1f} p90={percentile(latencies, 90):.1f} "
+              f"p99={percentile(latencies, 99):.1f} max={latencies[-1]:.1f}")
+    print_server_stats(args.base_url)
+
+    for panel in panels:
+        if panel.is_on:
+            panel.send({"type": "POWER_OFF"}, False)
+    time.sleep(0.5)
+    for panel in panels:
+        panel.close()
+
+
+if __name__ == "__main__":
+    main()
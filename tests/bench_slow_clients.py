@@ -0,0 +1,236 @@
+#!/usr/bin/env python3
+# -*- coding: utf-8 -*-
+"""
+慢客户端压测脚本（平台线程 / 虚拟线程请求处理对比）
+模拟大量网络很慢的客户端：每个慢客户端发出 POST /api/guest/changeState 的请求头后，
+按固定间隔逐字节发送请求体（请求体前部为空白，最后是正常的 JSON），在发送期间服务端处理该请求的线程
+阻塞在读取请求体上。与此同时，少量快客户端不断查询 GET /api/guest/status，统计其吞吐量与延迟分位数。
+
+平台线程模式下慢客户端会占满 Tomcat 的工作线程池（默认 200），快客户端的请求只能排队；
+虚拟线程模式（--spring.threads.virtual.enabled=true）下每个请求一个虚拟线程，阻塞不占用平台线程。
+
+使用 asyncio 在单个进程中维持全部连接，只依赖标准库。
+
+注意：
+- 需要足够的文件描述符：运行前执行 ulimit -n 65536（客户端与服务端都需要，至少为慢客户端数加余量）
+- 服务端默认最多保持 8192 个连接，1 万个慢客户端需要以 --server.tomcat.max-connections=20000 启动
+- 脚本会为慢客户端使用的房间办理入住并开机，结束时关机
+- 请使用独立的测试环境运行，避免影响正在进行的验收测试
+"""
+
+import argparse
+import asyncio
+import json
+import random
+import time
+from urllib.parse import urlsplit
+
+API_BASE_URL = "http://localhost:8080/api"
+
+
+def all_room_ids():
+    # 4 层，每层 10 间（与 RoomInitService 一致）
+    return [f"{floor}{num:02d}" for floor in range(1, 5) for num in range(1, 11)]
+
+
+def percentile(sorted_values, p):
+    if not sorted_values:
+        return 0.0
+    k = max(0, min(len(sorted_values) - 1, int(round(p / 100.0 * len(sorted_values))) - 1))
+    return sorted_values[k]
+
+
+class Stats:
+    def __init__(self):
+        self.fast_latencies = []
+        self.fast_errors = 0
+        self.slow_completed = 0
+        self.slow_errors = 0
+        # 慢客户端发完最后一个字节到收到响应的时间
+        self.slow_tails = []
+
+
+async def read_response(reader):
+    """读取一个 HTTP/1.1 响应（支持 Content-Length 与 chunked），返回 (状态码, 服务端是否要求关闭连接)"""
+    status_line = await reader.readline()
+    if not status_line:
+        raise ConnectionError("connection closed")
+    status = int(status_line.split()[1])
+    length = None
+    chunked = False
+    close = False
+    while True:
+        line = await reader.readline()
+        if line in (b"\r\n", b"\n", b""):
+            break
+        name, _, value = line.decode("latin-1").partition(":")
+        name = name.strip().lower()
+        if name == "content-length":
+            length = int(value.strip())
+        elif name == "transfer-encoding" and "chunked" in value.lower():
+            chunked = True
+        elif name == "connection" and "close" in value.lower():
+            close = True
+    if chunked:
+        while True:
+            size = int((await reader.readline()).strip() or b"0", 16)
+            await reader.readexactly(size + 2)
+            if size == 0:
+                break
+    elif length:
+        await reader.readexactly(length)
+    return status, close
+
+
+async def http_request(host, port, method, path, body=None, timeout=60.0):
+    """一次性请求（准备数据用），返回状态码"""
+    reader, writer = await asyncio.open_connection(host, port)
+    try:
+        payload = json.dumps(body).encode() if body is not None else b""
+        head = (f"{method} {path} HTTP/1.1\r\nHost: {host}\r\nContent-Type: application/json\r\n"
+                f"Content-Length: {len(payload)}\r\nConnection: close\r\n\r\n")
+        writer.write(head.encode() + payload)
+        await writer.drain()
+        status, _ = await asyncio.wait_for(read_response(reader), timeout)
+        return status
+    finally:
+        writer.close()
+
+
+async def slow_client(host, base_path, room_id, args, stats, stop):
+    """循环发送慢请求：请求头立即发送，请求体每隔 trickle 秒发送一个字节"""
+    # 只调整目标温度、风速不变，避免调度与计费开销干扰对比
+    body = json.dumps({"roomId": room_id, "targetTemp": random.choice([22, 24]), "fanSpeed": "MIDDLE"}).encode()
+    padding = max(1, int(args.slow_seconds / args.trickle))
+    payload = b" " * padding + body
+    head = (f"POST {base_path}/guest/changeState HTTP/1.1\r\nHost: {host}\r\n"
+            f"Content-Type: application/json\r\nContent-Length: {len(payload)}\r\n\r\n").encode()
+    # 错开启动时间
+    await asyncio.sleep(random.random() * args.ramp)
+    while not stop.is_set():
+        try:
+            reader, writer = await asyncio.open_connection(host, args.port)
+        except OSError:
+            stats.slow_errors += 1
+            await asyncio.sleep(1.0)
+            continue
+        try:
+            while not stop.is_set():
+                writer.write(head)
+                await writer.drain()
+                for i in range(padding):
+                    writer.write(payload[i:i + 1])
+                    await writer.drain()
+                    await asyncio.sleep(args.trickle)
+                    if stop.is_set():
+                        return
+                writer.write(payload[padding:])
+                await writer.drain()
+                sent_at = time.perf_counter()
+                _, close = await asyncio.wait_for(read_response(reader), args.timeout)
+                stats.slow_tails.append((time.perf_counter() - sent_at) * 1000.0)
+                stats.slow_completed += 1
+                if close:
+                    break
+        except (OSError, asyncio.TimeoutError, asyncio.IncompleteReadError, ConnectionError, ValueError):
+            stats.slow_errors += 1
+        finally:
+            writer.close()
+
+
+async def fast_client(host, base_path, room_id, args, stats, stop, measuring):
+    """保持连接不断查询房间状态"""
+    request = (f"GET {base_path}/guest/status?roomId={room_id} HTTP/1.1\r\nHost: {host}\r\n\r\n").encode()
+    while not stop.is_set():
+        try:
+            reader, writer = await asyncio.open_connection(host, args.port)
+        except OSError:
+            stats.fast_errors += 1
+            await asyncio.sleep(1.0)
+            continue
+        try:
+            while not stop.is_set():
+                began = time.perf_counter()
+                writer.write(request)
+                await writer.drain()
+                _, close = await asyncio.wait_for(read_response(reader), args.timeout)
+                if measuring.is_set():
+                    stats.fast_latencies.append((time.perf_counter() - began) * 1000.0)
+                if close:
+                    # 服务端达到单连接请求数上限后关闭连接，重新连接
+                    break
+        except (OSError, asyncio.TimeoutError, asyncio.IncompleteReadError, ConnectionError, ValueError):
+            if measuring.is_set():
+                stats.fast_errors += 1
+        finally:
+            writer.close()
+
+
+async def run(args):
+    url = urlsplit(args.base_url)
+    host = url.hostname
+    args.port = url.port or 80
+    base_path = url.path.rstrip("/")
+    rooms = all_room_ids()
+
+    print(f"为 {len(rooms)} 个房间办理入住并开机 ...")
+    for room_id in rooms:
+        await http_request(host, args.port, "POST", f"{base_path}/clerk/checkin",
+                           {"roomId": room_id, "customerName": f"bench-{room_id}"})
+        await http_request(host, args.port, "POST", f"{base_path}/guest/powerOn",
+                           {"roomId": room_id, "mode": "COOL", "targetTemp": 22, "fanSpeed": "MIDDLE"})
+
+    stats = Stats()
+    stop = asyncio.Event()
+    measuring = asyncio.Event()
+    tasks = [asyncio.create_task(slow_client(host, base_path, rooms[i % len(rooms)], args, stats, stop))
+             for i in range(args.slow)]
+    tasks += [asyncio.create_task(fast_client(host, base_path, rooms[i % len(rooms)], args, stats, stop, measuring))
+              for i in range(args.fast)]
+    print(f"{args.slow} 个慢客户端（请求体约 {args.slow_seconds:.0f}s 发完），{args.fast} 个快客户端，"
+          f"预热 {args.ramp:.0f}s 后统计 {args.duration:.0f}s ...")
+    await asyncio.sleep(args.ramp)
+    measuring.set()
+    completed_before = stats.slow_completed
+    began = time.perf_counter()
+    await asyncio.sleep(args.duration)
+    elapsed = time.perf_counter() - began
+    measuring.clear()
+    slow_completed = stats.slow_completed - completed_before
+    stop.set()
+    for task in tasks:
+        task.cancel()
+    await asyncio.gather(*tasks, return_exceptions=True)
+
+    latencies = sorted(stats.fast_latencies)
+    tails = sorted(stats.slow_tails)
+    print("=" * 50)
+    print(f"快客户端: {len(latencies)} 个请求, 吞吐量 {len(latencies) / elapsed:.1f} req/s, 错误/超时 {stats.fast_errors}")
+    if latencies:
+        print(f"快客户端延迟(ms): p50={percentile(latencies, 50):.1f} p90={percentile(latencies, 90):.1f} "
+              f"p99={percentile(latencies, 99):.1f} p99.9={percentile(latencies, 99.9):.1f} max={latencies[-1]:.1f}")
+    print(f"慢客户端: 统计期间完成 {slow_completed} 个请求, 错误/超时 {stats.slow_errors}")
+    if tails:
+        print(f"慢客户端发完请求体→收到响应(ms): p50={percentile(tails, 50):.1f} p99={percentile(tails, 99):.1f} "
+              f"max={tails[-1]:.1f}")
+
+    for room_id in rooms:
+        await http_request(host, args.port, "POST", f"{base_path}/guest/powerOff?roomId={room_id}")
+
+
+def main():
+    parser = argparse.ArgumentParser(description="慢客户端压测（平台线程 / 虚拟线程对比）")
+    parser.add_argument("--base-url", default=API_BASE_URL)
+    parser.add_argument("--slow", type=int, default=10000, help="慢客户端数")
+    parser.add_argument("--fast", type=int, default=50, help="快客户端数")
+    parser.add_argument("--slow-seconds", type=float, default=10.0, help="每个慢请求发完请求体所需时间（秒）")
+    parser.add_argument("--trickle", type=float, default=1.0, help="慢客户端发送两个字节之间的间隔（秒）")
+    parser.add_argument("--ramp", type=float, default=10.0, help="慢客户端的启动错开时间，也是统计前的预热时间（秒）")
+    parser.add_argument("--duration", type=float, default=30.0, help="统计时长（秒）")
+    parser.add_argument("--timeout", type=float, default=60.0, help="单个请求等待响应的超时（秒）")
+    args = parser.parse_args()
+    asyncio.run(run(args))
+
+
+if __name__ == "__main__":
+    main()